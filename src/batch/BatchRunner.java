@@ -0,0 +1,415 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package batch;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import parts.Part;
+import parts.PartType;
+
+import engine.AllPairsBroadphase;
+import engine.Broadphase;
+import engine.PhysicsWorld;
+import engine.SweepAndPruneBroadphase;
+import engine.UniformGridBroadphase;
+import engine.Vector;
+import goals.ContactTrigger;
+import goals.Goal;
+import goals.RegionTrigger;
+import goals.Trigger;
+
+/*+----------------------------------------------------------------------
+||
+||  Class BatchRunner
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Runs saved scenes (the .rgm files written by
+||                  WorldPanel.saveParts()) without a window, as fast as the
+||                  computer can step them, and writes out where every part
+||                  ended up and how long it took. Used to check and tune
+||                  levels without someone having to press Play and watch.
+||
+||                  Usage:
+||
+||                    java batch.BatchRunner [options] scene.rgm ...
+||
+||                    -steps N        run each scene for N steps (default
+||                                    1000)
+||                    -time S         run each scene for S seconds of
+||                                    simulated time instead
+||                    -dt S           the length of a step (default 0.01)
+||                    -broadphase B   allpairs, sap or grid (default grid)
+||                    -threads N      threads per scene (default: one per
+||                                    processor)
+||                    -region T:X,Y,W,H
+||                                    goal: a part of type T gets its center
+||                                    into the rectangle with its lower left
+||                                    corner at X,Y and size W,H (m)
+||                    -contact A:B    goal: a part of type A touches one of
+||                                    type B
+||                    -out FILE       write to FILE instead of the screen
+||
+||                  When goals are given, all of them have to be met (see
+||                  Goal), and a scene stops as soon as they are, or as soon
+||                  as they can't be anymore, instead of running all its
+||                  steps.
+||
+||                  For each scene there is a summary line, starting with
+||                  "scene", followed by one line per part:
+||
+||                    scene <file> parts <n> steps <n> time <s> wallms <ms>
+||                          msperstep <ms> asleep <n>
+||                          goal <met|impossible|pending|none>
+||                    part <index> <PartType> <x> <y> <vx> <vy> <asleep>
+||
+||                  and at the end a line starting with "total". A scene that
+||                  can't be read gets an "error" line instead, and the
+||                  program exits with status 1 once the others have run.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  N/A
+||
+||  Class Methods:  + main(String[]) : void
+||                  + loadScene(String) : List<Part>
+||                  + createBroadphase(String) : Broadphase
+||                  + createTrigger(String, String) : Trigger
+||
+||  Inst. Methods:  N/A
+||
+++-----------------------------------------------------------------------*/
+public class BatchRunner {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * How many steps a scene is run for if neither -steps nor -time is given.
+	 */
+	private static final int DEFAULT_STEPS = 1000;
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Reads a scene saved by WorldPanel.saveParts().
+	 *
+	 * @param filename
+	 *            the relative or absolute location of the file
+	 * @return the parts of the scene
+	 * @throws IOException
+	 *             if the file can't be read, or doesn't hold a list of parts
+	 */
+	public static List<Part> loadScene(String filename) throws IOException {
+		return readScene(new FileInputStream(filename), filename);
+	}
+
+	/**
+	 * Reads a scene from a stream, which is closed afterwards.
+	 *
+	 * @param in
+	 *            the stream holding the scene
+	 * @param name
+	 *            what to call the scene in error messages
+	 * @return the parts of the scene
+	 * @throws IOException
+	 *             if the stream can't be read, or doesn't hold a list of parts
+	 */
+	@SuppressWarnings("unchecked")
+	static List<Part> readScene(InputStream in, String name) throws IOException {
+		ObjectInputStream objstream = new ObjectInputStream(in);
+
+		try {
+			Object object = objstream.readObject();
+			if (!(object instanceof List))
+				throw new IOException(name + " does not hold a list of parts");
+
+			List<Part> parts = new ArrayList<Part>();
+			for (Object o : (List<Object>) object) {
+				if (!(o instanceof Part))
+					throw new IOException(name + " does not hold a list of parts");
+				parts.add((Part) o);
+			}
+
+			return parts;
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException(name + " holds an unknown class: " + e.getMessage());
+		}
+		finally {
+			objstream.close();
+		}
+	}
+
+	/**
+	 * Creates a Broadphase from its name on the command line.
+	 *
+	 * @param name
+	 *            allpairs, sap or grid
+	 * @return a new Broadphase
+	 * @throws IllegalArgumentException
+	 *             if the name is unknown
+	 */
+	public static Broadphase createBroadphase(String name) {
+		if (name.equals("allpairs"))
+			return new AllPairsBroadphase();
+		if (name.equals("sap"))
+			return new SweepAndPruneBroadphase();
+		if (name.equals("grid"))
+			return new UniformGridBroadphase();
+
+		throw new IllegalArgumentException("Unknown broadphase: " + name);
+	}
+
+	/**
+	 * Creates a goal Trigger from its option and value on the command line.
+	 *
+	 * @param option
+	 *            -region or -contact
+	 * @param value
+	 *            T:X,Y,W,H for -region, A:B for -contact
+	 * @return a new Trigger
+	 * @throws IllegalArgumentException
+	 *             if the option is unknown or the value is wrong
+	 */
+	public static Trigger createTrigger(String option, String value) {
+		int colon = value.indexOf(':');
+		if (colon < 0)
+			throw new IllegalArgumentException("Missing ':' in " + option + " " + value);
+
+		PartType type = PartType.valueOf(value.substring(0, colon).trim());
+		String rest = value.substring(colon + 1);
+
+		if (option.equals("-region")) {
+			String[] rect = rest.split(",");
+			if (rect.length != 4)
+				throw new IllegalArgumentException("A region looks like T:X,Y,W,H: " + value);
+
+			return new RegionTrigger(type, Double.parseDouble(rect[0].trim()), Double.parseDouble(rect[1].trim()), Double.parseDouble(rect[2].trim()), Double.parseDouble(rect[3].trim()));
+		}
+		if (option.equals("-contact"))
+			return new ContactTrigger(type, PartType.valueOf(rest.trim()));
+
+		throw new IllegalArgumentException("Unknown goal: " + option);
+	}
+
+	/**
+	 * Creates a new Goal out of the goal options on the command line. Each
+	 * run needs a Goal of its own, since triggers remember what they've
+	 * seen.
+	 *
+	 * @param goalOptions
+	 *            the option and value of each trigger
+	 * @return the goal, or <code>null</code> if there are no triggers
+	 */
+	static Goal createGoal(List<String[]> goalOptions) {
+		if (goalOptions.isEmpty())
+			return null;
+
+		Goal goal = new Goal();
+		for (String[] option : goalOptions)
+			goal.addTrigger(createTrigger(option[0], option[1]));
+
+		return goal;
+	}
+
+	/**
+	 * Writes the position, velocity and state of every part of a world, one
+	 * line each.
+	 *
+	 * @param world
+	 *            the world
+	 * @param out
+	 *            where to write the lines
+	 */
+	static void writeParts(PhysicsWorld<Part> world, PrintWriter out) {
+		List<Part> parts = world.getParts();
+		for (int i = 0; i < parts.size(); i++) {
+			Part p = parts.get(i);
+			Vector position = p.getPosition();
+			Vector velocity = p.getVelocity();
+			out.printf(Locale.ROOT, "part %d %s %.6f %.6f %.6f %.6f %b%n", i, p.getPartType(), position.getX(), position.getY(), velocity.getX(), velocity.getY(), p.isAsleep());
+		}
+	}
+
+	/**
+	 * Counts the parts of a world that are asleep.
+	 */
+	static int countAsleep(PhysicsWorld<Part> world) {
+		int asleep = 0;
+		for (Part p : world.getMovingParts()) {
+			if (p.isAsleep())
+				asleep++;
+		}
+
+		return asleep;
+	}
+
+	/**
+	 * Prints how to use the program and exits.
+	 */
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("usage: java batch.BatchRunner [-steps N | -time S] [-dt S] [-broadphase allpairs|sap|grid] [-threads N] [-region T:X,Y,W,H ...] [-contact A:B ...] [-out FILE] scene.rgm ...");
+		System.exit(2);
+	}
+
+
+	// main /////////////////////////////////////////////////
+
+	/**
+	 * Runs every scene named on the command line, one after the other. See
+	 * the class comment for the options.
+	 */
+	public static void main(String[] args) throws IOException {
+		int steps = DEFAULT_STEPS;
+		double time = -1.0;
+		double timeStep = PhysicsWorld.DEFAULT_TIME_STEP;
+		String broadphase = "grid";
+		int threads = 0;
+		String outName = null;
+		List<String> scenes = new ArrayList<String>();
+		List<String[]> goalOptions = new ArrayList<String[]>();
+
+		// read the options
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (!arg.startsWith("-")) {
+					scenes.add(arg);
+					continue;
+				}
+
+				if (i + 1 == args.length)
+					usage("Missing value for " + arg);
+				String value = args[++i];
+
+				if (arg.equals("-steps"))
+					steps = Integer.parseInt(value);
+				else if (arg.equals("-time"))
+					time = Double.parseDouble(value);
+				else if (arg.equals("-dt"))
+					timeStep = Double.parseDouble(value);
+				else if (arg.equals("-broadphase"))
+					broadphase = value;
+				else if (arg.equals("-threads"))
+					threads = Integer.parseInt(value);
+				else if (arg.equals("-region") || arg.equals("-contact"))
+					goalOptions.add(new String[] { arg, value });
+				else if (arg.equals("-out"))
+					outName = value;
+				else
+					usage("Unknown option: " + arg);
+			}
+
+			createGoal(goalOptions);
+		}
+		catch (NumberFormatException e) {
+			usage("Not a number: " + e.getMessage());
+		}
+		catch (IllegalArgumentException e) {
+			usage(e.getMessage());
+		}
+
+		if (scenes.isEmpty())
+			usage("No scenes given");
+		if (!(timeStep > 0.0))
+			usage("The time step must be greater than 0");
+		if (time >= 0.0)
+			steps = (int) Math.ceil(time / timeStep - 1.0e-9);
+		if (steps < 0)
+			usage("The number of steps can't be negative");
+		try {
+			createBroadphase(broadphase);
+		}
+		catch (IllegalArgumentException e) {
+			usage(e.getMessage());
+		}
+
+		PrintWriter out = new PrintWriter(outName == null ? new OutputStreamWriter(System.out) : new OutputStreamWriter(new FileOutputStream(outName), "UTF-8"));
+		boolean failed = false;
+		long totalSteps = 0;
+		long totalTime = 0;
+
+		for (String scene : scenes) {
+			List<Part> parts;
+			try {
+				parts = loadScene(scene);
+			}
+			catch (IOException e) {
+				out.printf(Locale.ROOT, "error %s %s%n", scene, e.getMessage());
+				out.flush();
+				failed = true;
+				continue;
+			}
+
+			PhysicsWorld<Part> world = new PhysicsWorld<Part>(new Vector(0.0, -9.80), timeStep);
+			world.getContext().setBroadphase(createBroadphase(broadphase));
+			if (threads > 0)
+				world.getContext().setParallelism(threads);
+			world.addAll(parts);
+
+			Goal goal = createGoal(goalOptions);
+
+			long startTime = System.nanoTime();
+			if (goal != null) {
+				goal.attach(world);
+				goal.run(steps);
+				goal.detach();
+			}
+			else {
+				world.step(steps);
+			}
+			long wallTime = System.nanoTime() - startTime;
+			long stepsTaken = world.getStepCount();
+
+			out.printf(Locale.ROOT, "scene %s parts %d steps %d time %.3f wallms %.1f msperstep %.4f asleep %d goal %s%n", scene, world.size(), stepsTaken, world.getTime(), wallTime / 1.0e6, stepsTaken == 0 ? 0.0 : wallTime / 1.0e6 / stepsTaken, countAsleep(world), goal == null ? "none" : goal.getStatus());
+			writeParts(world, out);
+			out.flush();
+			// stops the threads -threads started for this scene
+			world.close();
+
+			totalSteps += stepsTaken;
+			totalTime += wallTime;
+		}
+
+		out.printf(Locale.ROOT, "total scenes %d steps %d wallms %.1f%n", scenes.size(), totalSteps, totalTime / 1.0e6);
+		out.close();
+
+		if (failed)
+			System.exit(1);
+	}
+
+}
@@ -0,0 +1,554 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package batch;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import parts.Part;
+import parts.PartFactory;
+import parts.PartType;
+
+import engine.PhysicsWorld;
+import engine.Updateable;
+import engine.Vector;
+import exceptions.PartCreationException;
+import goals.Goal;
+
+/*+----------------------------------------------------------------------
+||
+||  Class SceneSweep
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Runs one saved scene many times over, changing it a
+||                  little each time, to see how a level behaves across a
+||                  range of settings: different gravity, some kinds of part
+||                  swapped for others, and the moving parts nudged away from
+||                  where they were placed. Every combination of the values
+||                  given is one variant, and the variants are run at the
+||                  same time.
+||
+||                  Usage:
+||
+||                    java batch.SceneSweep [options] scene.rgm
+||
+||                    -gravity X,Y    a gravity to try; may be given more
+||                                    than once (default 0,-9.8)
+||                    -swap A=B,C     also try the scene with every A
+||                                    replaced by a B, and by a C; may be
+||                                    given more than once, for different A
+||                    -jitter R       move every moving part by up to R (m)
+||                                    in x and y before starting
+||                    -seeds N        try N different jitters (default 1)
+||                    -steps N        run each variant for N steps (default
+||                                    1000)
+||                    -time S         run each variant for S seconds of
+||                                    simulated time instead
+||                    -dt S           the length of a step (default 0.01)
+||                    -broadphase B   allpairs, sap or grid (default grid)
+||                    -workers N      variants stepped at once (default:
+||                                    one per processor)
+||                    -region T:X,Y,W,H
+||                    -contact A:B    goals, as for BatchRunner; a variant
+||                                    stops as soon as they are met or
+||                                    can't be anymore
+||                    -states         also write every part of every variant
+||                    -out FILE       write to FILE instead of the screen
+||
+||                  Each variant is stepped on a single thread, and at most
+||                  -workers of them are stepped at once, on a pool of that
+||                  many threads. Everything else (building the variants,
+||                  waiting on them and writing out the results) is done by
+||                  one task per variant. On Java 21 and later these tasks
+||                  run on virtual threads, so there can be thousands of them
+||                  without costing a thread each; before that they share a
+||                  small pool of ordinary threads.
+||
+||                  A variant's results are written as soon as it finishes,
+||                  so the lines come out in whatever order the variants
+||                  finish in:
+||
+||                    variant <n> gravity <x>,<y> swap <A=B;...|none>
+||                            seed <n> parts <n> steps <n> time <s>
+||                            wallms <ms> asleep <n> moving <n>
+||                            goal <met|impossible|pending|none>
+||                    part <index> <PartType> <x> <y> <vx> <vy> <asleep>
+||
+||                  (the part lines only with -states) and at the end a line
+||                  starting with "total". A variant that fails gets an
+||                  "error" line instead, and the program exits with status
+||                  1 once the others have run. The same variant always
+||                  gives the same results.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  N/A
+||
+||  Class Methods:  + main(String[]) : void
+||
+||  Inst. Methods:  N/A
+||
+++-----------------------------------------------------------------------*/
+public class SceneSweep {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * How many steps a variant is run for if neither -steps nor -time is
+	 * given.
+	 */
+	private static final int DEFAULT_STEPS = 1000;
+
+	/**
+	 * How many ordinary threads share the tasks that aren't stepping, for
+	 * each stepping thread, when there are no virtual threads. Those tasks
+	 * mostly wait, so a couple each is enough to keep the stepping threads
+	 * fed.
+	 */
+	private static final int TASK_THREADS_PER_WORKER = 2;
+
+	/**
+	 * The saved scene, read once and deserialized again for each variant so
+	 * that every variant gets parts of its own.
+	 */
+	private static byte[] scene;
+	private static String sceneName;
+
+	private static List<Vector> gravities = new ArrayList<Vector>();
+	/**
+	 * The parts to swap, and for each one the kinds to try in its place
+	 * (null meaning "leave it").
+	 */
+	private static List<PartType> swapFrom = new ArrayList<PartType>();
+	private static List<List<PartType>> swapTo = new ArrayList<List<PartType>>();
+	private static double jitter = 0.0;
+	private static int seeds = 1;
+	private static int steps = DEFAULT_STEPS;
+	private static double timeStep = PhysicsWorld.DEFAULT_TIME_STEP;
+	private static String broadphase = "grid";
+	private static boolean writeStates = false;
+	/**
+	 * The option and value of each goal trigger (see
+	 * BatchRunner.createTrigger()).
+	 */
+	private static List<String[]> goalOptions = new ArrayList<String[]>();
+
+	/**
+	 * The results, and the lock that keeps the lines of one variant
+	 * together. A ReentrantLock rather than synchronized, so that a virtual
+	 * thread waiting on it gives up its carrier thread.
+	 */
+	private static PrintWriter out;
+	private static final ReentrantLock outLock = new ReentrantLock();
+	private static final AtomicBoolean failed = new AtomicBoolean();
+	/**
+	 * The steps taken by all variants, which is fewer than asked for when
+	 * goals stop them early.
+	 */
+	private static final AtomicLong totalSteps = new AtomicLong();
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Gets the number of variants: one for every combination of gravity,
+	 * swaps and seed.
+	 */
+	private static int countVariants() {
+		int count = gravities.size() * seeds;
+		for (List<PartType> choices : swapTo)
+			count *= choices.size();
+
+		return count;
+	}
+
+	/**
+	 * Runs one variant from start to finish and writes out its results. The
+	 * stepping is handed to the stepping pool; the rest is done on the
+	 * calling thread.
+	 *
+	 * @param variant
+	 *            the number of the variant, from 0 to countVariants() - 1
+	 * @param stepPool
+	 *            the threads the variant is stepped on
+	 */
+	private static void runVariant(int variant, ExecutorService stepPool) {
+		// the seed changes fastest, then the swaps (the last one first), then
+		// the gravity
+		int rest = variant;
+		final int seed = rest % seeds;
+		rest /= seeds;
+
+		final PartType[] swaps = new PartType[swapFrom.size()];
+		for (int i = swaps.length - 1; i >= 0; i--) {
+			List<PartType> choices = swapTo.get(i);
+			swaps[i] = choices.get(rest % choices.size());
+			rest /= choices.size();
+		}
+
+		final Vector gravity = gravities.get(rest);
+
+		StringBuilder swapText = new StringBuilder();
+		for (int i = 0; i < swaps.length; i++) {
+			if (swaps[i] == null)
+				continue;
+			if (swapText.length() > 0)
+				swapText.append(';');
+			swapText.append(swapFrom.get(i)).append('=').append(swaps[i]);
+		}
+		if (swapText.length() == 0)
+			swapText.append("none");
+
+		final Goal goal = BatchRunner.createGoal(goalOptions);
+
+		Future<PhysicsWorld<Part>> result = stepPool.submit(new Callable<PhysicsWorld<Part>>() {
+			public PhysicsWorld<Part> call() throws Exception {
+				PhysicsWorld<Part> world = createVariant(gravity, swaps, seed);
+				if (goal != null) {
+					goal.attach(world);
+					goal.run(steps);
+					goal.detach();
+				}
+				else {
+					world.step(steps);
+				}
+				return world;
+			}
+		});
+
+		long startTime = System.nanoTime();
+		PhysicsWorld<Part> world;
+		try {
+			world = result.get();
+		}
+		catch (InterruptedException e) {
+			result.cancel(true);
+			Thread.currentThread().interrupt();
+			return;
+		}
+		catch (ExecutionException e) {
+			failed.set(true);
+			outLock.lock();
+			try {
+				out.printf(Locale.ROOT, "error variant %d %s%n", variant, e.getCause());
+				out.flush();
+			}
+			finally {
+				outLock.unlock();
+			}
+			return;
+		}
+		// this includes the time spent waiting for a stepping thread, which
+		// is what it costs to run a variant in a sweep this size
+		long wallTime = System.nanoTime() - startTime;
+		totalSteps.addAndGet(world.getStepCount());
+
+		outLock.lock();
+		try {
+			out.printf(Locale.ROOT, "variant %d gravity %.4f,%.4f swap %s seed %d parts %d steps %d time %.3f wallms %.1f asleep %d moving %d goal %s%n", variant, gravity.getX(), gravity.getY(), swapText, seed, world.size(), world.getStepCount(), world.getTime(), wallTime / 1.0e6, BatchRunner.countAsleep(world), world.getMovingParts().size(), goal == null ? "none" : goal.getStatus());
+			if (writeStates)
+				BatchRunner.writeParts(world, out);
+			out.flush();
+		}
+		finally {
+			outLock.unlock();
+		}
+
+		world.close();
+	}
+
+	/**
+	 * Builds the world for one variant: a fresh copy of the scene with the
+	 * swaps made and the moving parts jittered.
+	 *
+	 * @param gravity
+	 *            the gravity of the variant
+	 * @param swaps
+	 *            what to put in place of each kind of part in swapFrom, or
+	 *            null to leave it
+	 * @param seed
+	 *            picks the jitter; the same seed always moves the parts the
+	 *            same way
+	 * @return the world, ready to step
+	 */
+	private static PhysicsWorld<Part> createVariant(Vector gravity, PartType[] swaps, int seed) throws IOException, PartCreationException {
+		List<Part> parts = BatchRunner.readScene(new ByteArrayInputStream(scene), sceneName);
+
+		for (int i = 0; i < parts.size(); i++) {
+			Part p = parts.get(i);
+			int index = swapFrom.indexOf(p.getPartType());
+			if (index < 0 || swaps[index] == null)
+				continue;
+
+			// the new part goes where the center of the old one was, and
+			// keeps moving the same way
+			Vector center = p.getCenter();
+			Part replacement = PartFactory.getPart(swaps[index], new Point2D.Double(center.getX(), center.getY()));
+			replacement.setVelocity(p.getVelocity());
+			parts.set(i, replacement);
+		}
+
+		if (jitter > 0.0) {
+			Random random = new Random(seed);
+			for (Part p : parts) {
+				if (!(p instanceof Updateable))
+					continue;
+
+				Vector position = p.getPosition();
+				position.set(position.getX() + (2.0 * random.nextDouble() - 1.0) * jitter, position.getY() + (2.0 * random.nextDouble() - 1.0) * jitter);
+				p.updateBounds();
+			}
+		}
+
+		PhysicsWorld<Part> world = new PhysicsWorld<Part>(gravity, timeStep);
+		world.getContext().setBroadphase(BatchRunner.createBroadphase(broadphase));
+		// the variants are already spread over the processors
+		world.getContext().setParallelism(1);
+		world.addAll(parts);
+
+		return world;
+	}
+
+	/**
+	 * Creates the executor the per-variant tasks run on: one virtual thread
+	 * per task where there are virtual threads (Java 21 and later), or else
+	 * a small pool of ordinary threads. It is looked up by name so that the
+	 * sweep still builds and runs on older versions.
+	 *
+	 * @param workers
+	 *            the number of stepping threads
+	 * @return the executor
+	 */
+	private static ExecutorService createTaskExecutor(int workers) {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(workers * TASK_THREADS_PER_WORKER);
+		}
+	}
+
+	/**
+	 * Reads "x,y" into a Vector.
+	 */
+	private static Vector parseVector(String value) {
+		String[] xy = value.split(",");
+		if (xy.length != 2)
+			throw new NumberFormatException(value);
+
+		return new Vector(Double.parseDouble(xy[0].trim()), Double.parseDouble(xy[1].trim()));
+	}
+
+	/**
+	 * Reads "A=B,C" into swapFrom and swapTo. Leaving A alone is always one
+	 * of the choices. One part of each new kind is made right away, so that
+	 * a kind PartFactory can't make is caught here instead of failing every
+	 * variant it is in.
+	 */
+	private static void parseSwap(String value) {
+		int equals = value.indexOf('=');
+		if (equals < 0)
+			throw new IllegalArgumentException("A swap looks like A=B,C: " + value);
+
+		PartType from = PartType.valueOf(value.substring(0, equals).trim());
+		if (swapFrom.contains(from))
+			throw new IllegalArgumentException(from + " is swapped more than once");
+
+		List<PartType> choices = new ArrayList<PartType>();
+		choices.add(null);
+		for (String to : value.substring(equals + 1).split(",")) {
+			PartType type = PartType.valueOf(to.trim());
+			try {
+				PartFactory.getPart(type, new Point2D.Double(0.0, 0.0));
+			}
+			catch (PartCreationException e) {
+				throw new IllegalArgumentException(type + " can't be swapped in: " + e.getMessage());
+			}
+			choices.add(type);
+		}
+
+		swapFrom.add(from);
+		swapTo.add(choices);
+	}
+
+	/**
+	 * Prints how to use the program and exits.
+	 */
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("usage: java batch.SceneSweep [-gravity X,Y ...] [-swap A=B,C ...] [-jitter R] [-seeds N] [-steps N | -time S] [-dt S] [-broadphase allpairs|sap|grid] [-workers N] [-region T:X,Y,W,H ...] [-contact A:B ...] [-states] [-out FILE] scene.rgm");
+		System.exit(2);
+	}
+
+
+	// main /////////////////////////////////////////////////
+
+	/**
+	 * Runs every variant of the scene named on the command line. See the
+	 * class comment for the options.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		// the results go to the real standard output. anything printed while
+		// parts are made (Walls and Ramps print their outlines) goes to
+		// standard error instead, so it can't get mixed into the results
+		PrintStream results = System.out;
+		System.setOut(System.err);
+
+		double time = -1.0;
+		int workers = Runtime.getRuntime().availableProcessors();
+		String outName = null;
+
+		// read the options
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (!arg.startsWith("-")) {
+					if (sceneName != null)
+						usage("Only one scene can be swept at a time");
+					sceneName = arg;
+					continue;
+				}
+
+				if (arg.equals("-states")) {
+					writeStates = true;
+					continue;
+				}
+
+				if (i + 1 == args.length)
+					usage("Missing value for " + arg);
+				String value = args[++i];
+
+				if (arg.equals("-gravity"))
+					gravities.add(parseVector(value));
+				else if (arg.equals("-swap"))
+					parseSwap(value);
+				else if (arg.equals("-jitter"))
+					jitter = Double.parseDouble(value);
+				else if (arg.equals("-seeds"))
+					seeds = Integer.parseInt(value);
+				else if (arg.equals("-steps"))
+					steps = Integer.parseInt(value);
+				else if (arg.equals("-time"))
+					time = Double.parseDouble(value);
+				else if (arg.equals("-dt"))
+					timeStep = Double.parseDouble(value);
+				else if (arg.equals("-broadphase"))
+					broadphase = value;
+				else if (arg.equals("-workers"))
+					workers = Integer.parseInt(value);
+				else if (arg.equals("-region") || arg.equals("-contact"))
+					goalOptions.add(new String[] { arg, value });
+				else if (arg.equals("-out"))
+					outName = value;
+				else
+					usage("Unknown option: " + arg);
+			}
+
+			BatchRunner.createBroadphase(broadphase);
+			BatchRunner.createGoal(goalOptions);
+		}
+		catch (NumberFormatException e) {
+			usage("Not a number: " + e.getMessage());
+		}
+		catch (IllegalArgumentException e) {
+			usage(e.getMessage());
+		}
+
+		if (sceneName == null)
+			usage("No scene given");
+		if (gravities.isEmpty())
+			gravities.add(new Vector(0.0, -9.80));
+		if (!(timeStep > 0.0))
+			usage("The time step must be greater than 0");
+		if (time >= 0.0)
+			steps = (int) Math.ceil(time / timeStep - 1.0e-9);
+		if (steps < 0)
+			usage("The number of steps can't be negative");
+		if (seeds < 1)
+			usage("There must be at least one seed");
+		if (workers < 1)
+			usage("There must be at least one worker");
+
+		try {
+			scene = Files.readAllBytes(Paths.get(sceneName));
+		}
+		catch (IOException e) {
+			System.err.println("Can't read " + sceneName + ": " + e.getMessage());
+			System.exit(1);
+		}
+
+		out = new PrintWriter(outName == null ? new OutputStreamWriter(results) : new OutputStreamWriter(new FileOutputStream(outName), "UTF-8"));
+
+		int variants = countVariants();
+		final ExecutorService stepPool = Executors.newFixedThreadPool(workers);
+		ExecutorService tasks = createTaskExecutor(workers);
+
+		long startTime = System.nanoTime();
+		for (int i = 0; i < variants; i++) {
+			final int variant = i;
+			tasks.execute(new Runnable() {
+				public void run() {
+					runVariant(variant, stepPool);
+				}
+			});
+		}
+
+		tasks.shutdown();
+		tasks.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		stepPool.shutdown();
+		long wallTime = System.nanoTime() - startTime;
+
+		out.printf(Locale.ROOT, "total variants %d steps %d workers %d wallms %.1f%n", variants, totalSteps.get(), workers, wallTime / 1.0e6);
+		out.close();
+
+		if (failed.get())
+			System.exit(1);
+	}
+
+}
@@ -0,0 +1,539 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/*+----------------------------------------------------------------------
+||
+||  Class AABBTree
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  A bounding volume hierarchy (dynamic AABB tree) for the
+||                  PhysicsObjects that never move, like Walls and Ramps.
+||                  Each leaf holds one object and its axis-aligned bounding
+||                  box; each branch holds the box around both its children.
+||                  Finding what a moving object touches only has to follow
+||                  the branches whose boxes it overlaps, which is O(log n)
+||                  instead of O(n).
+||
+||                  Leaves are inserted next to the sibling that makes the
+||                  parent box grow the least (perimeter heuristic). That
+||                  alone can still grow a long thin tree (a row of walls
+||                  turns into a list), so on the way back up every branch is
+||                  rotated, like an AVL tree, whenever one child is more
+||                  than one level taller than the other. The height of the
+||                  tree is kept at O(log n) without ever rebuilding it from
+||                  scratch. The nodes are stored in arrays and removed nodes
+||                  are re-used, so inserting and querying do not create any
+||                  garbage once the arrays have grown.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + AABBTree()
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + build(List<? extends PhysicsObject>) : void
+||                  + insert(PhysicsObject) : void
+||                  + remove(PhysicsObject) : boolean
+||                  + clear() : void
+||                  + size() : int
+||                  + getHeight() : int
+||                  + getSmallestSize() : double
+||                  + query(PhysicsObject, double, double, double, double, PairList) : void
+||
+++-----------------------------------------------------------------------*/
+public class AABBTree {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * Marks "no node" in the parent and child arrays.
+	 */
+	private static final int NULL_NODE = -1;
+
+	// the nodes. a leaf has child1 == NULL_NODE and an object; a branch has
+	// two children. free nodes are chained together through their parent.
+	// height is 0 for a leaf and one more than its taller child for a branch.
+	private double[] minX, minY, maxX, maxY;
+	private int[] parent, child1, child2, height;
+	private PhysicsObject[] object;
+
+	/**
+	 * The leaf of each object in the tree, so remove() doesn't have to look
+	 * through every node. Rotations only re-link branches, so a leaf stays
+	 * where it is until its object is removed.
+	 */
+	private IdentityHashMap<PhysicsObject, Integer> leaves;
+
+	private int root;
+	private int freeList;
+	private int leafCount;
+	/**
+	 * The shortest side of all the boxes inserted since the last clear().
+	 * Not made bigger again when the smallest object is removed, which only
+	 * makes it err on the small side.
+	 */
+	private double smallestSize;
+
+	/**
+	 * The stack used by query(), kept so it doesn't have to be re-created.
+	 */
+	private int[] stack;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new, empty AABBTree.
+	 */
+	public AABBTree() {
+		leaves = new IdentityHashMap<PhysicsObject, Integer>();
+		allocate(16);
+		clear();
+		stack = new int[64];
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Empties the tree and fills it with every object in the list that is
+	 * not Updateable.
+	 *
+	 * @param parts
+	 *            all the parts in the world
+	 */
+	public void build(List<? extends PhysicsObject> parts) {
+		clear();
+
+		for (PhysicsObject po : parts) {
+			if (!(po instanceof Updateable))
+				insert(po);
+		}
+	}
+
+	/**
+	 * Removes everything from the tree.
+	 */
+	public void clear() {
+		for (int i = 0; i < object.length; i++) {
+			object[i] = null;
+			parent[i] = i + 1 < object.length ? i + 1 : NULL_NODE;
+		}
+
+		leaves.clear();
+		root = NULL_NODE;
+		freeList = 0;
+		leafCount = 0;
+		smallestSize = Double.MAX_VALUE;
+	}
+
+	/**
+	 * Gets the number of objects in the tree.
+	 */
+	public int size() {
+		return leafCount;
+	}
+
+	/**
+	 * Gets the number of branches on the longest path from the root to a
+	 * leaf.
+	 *
+	 * @return the height; 0 for a tree with one object or none
+	 */
+	public int getHeight() {
+		return root == NULL_NODE ? 0 : height[root];
+	}
+
+	/**
+	 * Gets the length of the shortest side of the boxes in the tree, which is
+	 * about the size of the smallest object. Used by Core to decide how far
+	 * an object may move in one step.
+	 * 
+	 * @return the smallest size, or Double.MAX_VALUE if the tree is empty
+	 */
+	public double getSmallestSize() {
+		return smallestSize;
+	}
+
+	/**
+	 * Adds an object to the tree. The object is expected to stay where it is
+	 * until it is removed again.
+	 *
+	 * @param po
+	 *            the object to add
+	 */
+	public void insert(PhysicsObject po) {
+		int leaf = allocateNode();
+		minX[leaf] = po.getMinX();
+		minY[leaf] = po.getMinY();
+		maxX[leaf] = po.getMaxX();
+		maxY[leaf] = po.getMaxY();
+		object[leaf] = po;
+		leaves.put(po, leaf);
+		leafCount++;
+		smallestSize = Math.min(smallestSize, Math.min(maxX[leaf] - minX[leaf], maxY[leaf] - minY[leaf]));
+
+		if (root == NULL_NODE) {
+			root = leaf;
+			parent[leaf] = NULL_NODE;
+			return;
+		}
+
+		// walk down to the best sibling for the new leaf
+		int node = root;
+		while (child1[node] != NULL_NODE) {
+			int c1 = child1[node];
+			int c2 = child2[node];
+
+			double perimeter = perimeter(node);
+			double combined = combinedPerimeter(node, leaf);
+
+			// cost of making a new parent for this node and the leaf, and the
+			// cost pushed down to the children if we go further
+			double cost = 2.0 * combined;
+			double inheritance = 2.0 * (combined - perimeter);
+
+			double cost1 = descendCost(c1, leaf) + inheritance;
+			double cost2 = descendCost(c2, leaf) + inheritance;
+
+			if (cost < cost1 && cost < cost2)
+				break;
+
+			node = cost1 < cost2 ? c1 : c2;
+		}
+
+		// put a new branch between the sibling and its old parent
+		int sibling = node;
+		int oldParent = parent[sibling];
+		int newParent = allocateNode();
+		parent[newParent] = oldParent;
+		object[newParent] = null;
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+
+		if (oldParent == NULL_NODE) {
+			root = newParent;
+		}
+		else {
+			if (child1[oldParent] == sibling)
+				child1[oldParent] = newParent;
+			else
+				child2[oldParent] = newParent;
+		}
+
+		refit(newParent);
+	}
+
+	/**
+	 * Removes an object from the tree.
+	 *
+	 * @param po
+	 *            the object to remove
+	 * @return true if the object was in the tree
+	 */
+	public boolean remove(PhysicsObject po) {
+		Integer found = leaves.remove(po);
+		if (found == null)
+			return false;
+
+		int leaf = found;
+
+		leafCount--;
+
+		if (leaf == root) {
+			root = NULL_NODE;
+			freeNode(leaf);
+			return true;
+		}
+
+		// the sibling takes the place of the parent
+		int oldParent = parent[leaf];
+		int grandParent = parent[oldParent];
+		int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+
+		if (grandParent == NULL_NODE) {
+			root = sibling;
+			parent[sibling] = NULL_NODE;
+		}
+		else {
+			if (child1[grandParent] == oldParent)
+				child1[grandParent] = sibling;
+			else
+				child2[grandParent] = sibling;
+			parent[sibling] = grandParent;
+
+			refit(grandParent);
+		}
+
+		freeNode(oldParent);
+		freeNode(leaf);
+		return true;
+	}
+
+	/**
+	 * Finds every object in the tree whose bounding box overlaps the given
+	 * box and adds it to the pair list, paired with <code>u</code>.
+	 *
+	 * @param u
+	 *            the (moving) object doing the query; it is the first object
+	 *            of every pair
+	 * @param qMinX
+	 *            the left edge of the query box
+	 * @param qMinY
+	 *            the bottom edge of the query box
+	 * @param qMaxX
+	 *            the right edge of the query box
+	 * @param qMaxY
+	 *            the top edge of the query box
+	 * @param pairs
+	 *            where the pairs are put
+	 */
+	public void query(PhysicsObject u, double qMinX, double qMinY, double qMaxX, double qMaxY, PairList pairs) {
+		if (root == NULL_NODE)
+			return;
+
+		int top = 0;
+		stack[top++] = root;
+
+		while (top > 0) {
+			int node = stack[--top];
+
+			if (minX[node] > qMaxX || qMinX > maxX[node] || minY[node] > qMaxY || qMinY > maxY[node])
+				continue;
+
+			if (child1[node] == NULL_NODE) {
+				if (object[node] != u)
+					pairs.add(u, object[node]);
+			}
+			else {
+				if (top + 2 > stack.length) {
+					int[] newStack = new int[stack.length * 2];
+					System.arraycopy(stack, 0, newStack, 0, top);
+					stack = newStack;
+				}
+
+				stack[top++] = child1[node];
+				stack[top++] = child2[node];
+			}
+		}
+	}
+
+	/**
+	 * Works back up the tree from a branch, balancing each branch and fixing
+	 * the boxes and heights on the way.
+	 */
+	private void refit(int node) {
+		while (node != NULL_NODE) {
+			node = balance(node);
+			fitToChildren(node);
+
+			node = parent[node];
+		}
+	}
+
+	/**
+	 * Sets the box and height of a branch from its two children.
+	 */
+	private void fitToChildren(int node) {
+		int c1 = child1[node];
+		int c2 = child2[node];
+
+		minX[node] = Math.min(minX[c1], minX[c2]);
+		minY[node] = Math.min(minY[c1], minY[c2]);
+		maxX[node] = Math.max(maxX[c1], maxX[c2]);
+		maxY[node] = Math.max(maxY[c1], maxY[c2]);
+		height[node] = 1 + Math.max(height[c1], height[c2]);
+	}
+
+	/**
+	 * Rotates a branch whose children differ in height by more than one: the
+	 * taller child takes the branch's place, and the branch takes the
+	 * shorter of that child's children, keeping the taller one. The
+	 * children of the branch must be up to date already.
+	 *
+	 * @param a
+	 *            the branch
+	 * @return the node now in the branch's place
+	 */
+	private int balance(int a) {
+		// the height of a itself may not be up to date yet, so only its
+		// children's heights are used
+		if (child1[a] == NULL_NODE)
+			return a;
+
+		int b = child1[a];
+		int c = child2[a];
+		int difference = height[c] - height[b];
+
+		if (difference > 1)
+			return rotateUp(a, c, false);
+		if (difference < -1)
+			return rotateUp(a, b, true);
+
+		return a;
+	}
+
+	/**
+	 * Moves the child <code>up</code> of <code>a</code> into a's place.
+	 *
+	 * @param isFirst
+	 *            whether <code>up</code> is a's first child
+	 * @return <code>up</code>
+	 */
+	private int rotateUp(int a, int up, boolean isFirst) {
+		int f = child1[up];
+		int g = child2[up];
+
+		// up takes a's place under a's parent
+		int oldParent = parent[a];
+		parent[up] = oldParent;
+		if (oldParent == NULL_NODE)
+			root = up;
+		else if (child1[oldParent] == a)
+			child1[oldParent] = up;
+		else
+			child2[oldParent] = up;
+
+		// up keeps its taller child and gives the shorter one to a, which
+		// becomes up's other child
+		int keep = height[f] > height[g] ? f : g;
+		int give = keep == f ? g : f;
+
+		child1[up] = a;
+		child2[up] = keep;
+		parent[a] = up;
+
+		if (isFirst)
+			child1[a] = give;
+		else
+			child2[a] = give;
+		parent[give] = a;
+
+		fitToChildren(a);
+		fitToChildren(up);
+		return up;
+	}
+
+	/**
+	 * The cost of putting the leaf somewhere under the given node.
+	 */
+	private double descendCost(int node, int leaf) {
+		if (child1[node] == NULL_NODE)
+			return combinedPerimeter(node, leaf);
+
+		return combinedPerimeter(node, leaf) - perimeter(node);
+	}
+
+	private double perimeter(int node) {
+		return 2.0 * ((maxX[node] - minX[node]) + (maxY[node] - minY[node]));
+	}
+
+	/**
+	 * The perimeter of the box around both nodes.
+	 */
+	private double combinedPerimeter(int a, int b) {
+		double width = Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]);
+		double height = Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]);
+		return 2.0 * (width + height);
+	}
+
+	/**
+	 * Takes a node off the free list, growing the arrays if there are none
+	 * left.
+	 */
+	private int allocateNode() {
+		if (freeList == NULL_NODE) {
+			int oldCapacity = object.length;
+			allocate(oldCapacity * 2);
+
+			// chain the new nodes onto the free list
+			for (int i = oldCapacity; i < object.length; i++)
+				parent[i] = i + 1 < object.length ? i + 1 : NULL_NODE;
+			freeList = oldCapacity;
+		}
+
+		int node = freeList;
+		freeList = parent[node];
+
+		parent[node] = NULL_NODE;
+		child1[node] = NULL_NODE;
+		child2[node] = NULL_NODE;
+		height[node] = 0;
+		return node;
+	}
+
+	/**
+	 * Puts a node back on the free list.
+	 */
+	private void freeNode(int node) {
+		object[node] = null;
+		child1[node] = NULL_NODE;
+		child2[node] = NULL_NODE;
+		parent[node] = freeList;
+		freeList = node;
+	}
+
+	/**
+	 * Grows (or creates) the node arrays, keeping the old nodes.
+	 */
+	private void allocate(int capacity) {
+		minX = grow(minX, capacity);
+		minY = grow(minY, capacity);
+		maxX = grow(maxX, capacity);
+		maxY = grow(maxY, capacity);
+		parent = grow(parent, capacity);
+		child1 = grow(child1, capacity);
+		child2 = grow(child2, capacity);
+		height = grow(height, capacity);
+
+		PhysicsObject[] newObject = new PhysicsObject[capacity];
+		if (object != null)
+			System.arraycopy(object, 0, newObject, 0, object.length);
+		object = newObject;
+	}
+
+	private static double[] grow(double[] old, int capacity) {
+		double[] result = new double[capacity];
+		if (old != null)
+			System.arraycopy(old, 0, result, 0, old.length);
+		return result;
+	}
+
+	private static int[] grow(int[] old, int capacity) {
+		int[] result = new int[capacity];
+		if (old != null)
+			System.arraycopy(old, 0, result, 0, old.length);
+		return result;
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+import java.util.List;
+
+/*+----------------------------------------------------------------------
+||
+||  Class AllPairsBroadphase
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  The "do nothing" Broadphase. Every Updateable is paired
+||                  with every other PhysicsObject, which is what Core used
+||                  to do with its nested loop. It is O(n^2), so it is
+||                  only meant to be used as a reference when checking the
+||                  results and the step times of the other Broadphases.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  Broadphase
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + AllPairsBroadphase()
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + findPairs(List<? extends PhysicsObject>, PairList) : void
+||
+++-----------------------------------------------------------------------*/
+public class AllPairsBroadphase implements Broadphase {
+
+	// behaviors ////////////////////////////////////////////
+
+	@Override
+	public void findPairs(List<? extends PhysicsObject> parts, PairList pairs) {
+		int n = parts.size();
+
+		for (int i = 0; i < n; i++) {
+			PhysicsObject u = parts.get(i);
+			if (!(u instanceof Updateable))
+				continue;
+
+			for (int j = 0; j < n; j++) {
+				PhysicsObject po = parts.get(j);
+
+				// don't pair a part with itself, and only pair two
+				// Updateables once
+				if (j == i || (j < i && po instanceof Updateable))
+					continue;
+
+				pairs.add(u, po);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+import java.util.List;
+
+/*+----------------------------------------------------------------------
+||
+||  Class BodyStore
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Holds the state of every body in the simulation in
+||                  plain double arrays (a "structure of arrays") instead of
+||                  in Vector objects scattered around the heap. Each body
+||                  gets a handle, which is its index in the arrays. The
+||                  handles are kept dense: when a body is removed, the last
+||                  body is moved into its slot.
+||
+||                  While a PhysicsObject is in the store, its position,
+||                  velocity and acceleration are BodyVectors (thin views of
+||                  the arrays), so the rest of the program doesn't need to
+||                  know that the store exists. Core integrates the bodies
+||                  and pushes them apart by working on the arrays directly.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + BodyStore()
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + add(PhysicsObject) : int
+||                  + addAll(List<? extends PhysicsObject>) : void
+||                  + remove(PhysicsObject) : void
+||                  + clear() : void
+||                  + size() : int
+||                  + getBody(int) : PhysicsObject
+||                  + integrate(double, Vector) : void
+||
+++-----------------------------------------------------------------------*/
+public class BodyStore {
+
+	// attributes ///////////////////////////////////////////
+
+	// the state of the bodies, indexed by handle
+	double[] posX, posY;
+	double[] velX, velY;
+	double[] accX, accY;
+
+	// the properties of the bodies, copied in when they are added
+	double[] mass;
+	double[] muK, muS;
+	double[] gravityScale;
+	/**
+	 * Whether each body is Updateable (only those are integrated).
+	 */
+	boolean[] movable;
+	/**
+	 * Whether each body is asleep (see PhysicsObject.isAsleep()). Sleeping
+	 * bodies are not integrated. Kept in step by PhysicsObject.
+	 */
+	boolean[] asleep;
+
+	/**
+	 * The PhysicsObject that owns each handle.
+	 */
+	private PhysicsObject[] bodies;
+	private int count;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new, empty BodyStore.
+	 */
+	public BodyStore() {
+		bodies = new PhysicsObject[0];
+		count = 0;
+		allocate(64);
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Moves a PhysicsObject into the store. Its current state is copied into
+	 * the arrays and its Vectors are replaced by views of them.
+	 *
+	 * @param po
+	 *            the object to add; it must not be in a store already
+	 * @return the new handle of the object
+	 */
+	public int add(PhysicsObject po) {
+		if (po.getBodyStore() != null)
+			throw new IllegalArgumentException("The object is already in a BodyStore!");
+
+		if (count == bodies.length)
+			allocate(count * 2);
+
+		int h = count++;
+		bodies[h] = po;
+
+		posX[h] = po.getPosition().getX();
+		posY[h] = po.getPosition().getY();
+		velX[h] = po.getVelocity().getX();
+		velY[h] = po.getVelocity().getY();
+		accX[h] = po.getAcceleration().getX();
+		accY[h] = po.getAcceleration().getY();
+
+		mass[h] = po.getMass();
+		muK[h] = po.getMUk();
+		muS[h] = po.getMUs();
+		gravityScale[h] = po.getGravityScale();
+		movable[h] = po instanceof Updateable;
+		asleep[h] = po.isAsleep();
+
+		po.attach(this, h);
+		return h;
+	}
+
+	/**
+	 * Adds every object in the list.
+	 *
+	 * @param parts
+	 *            the objects to add
+	 */
+	public void addAll(List<? extends PhysicsObject> parts) {
+		for (PhysicsObject po : parts)
+			add(po);
+	}
+
+	/**
+	 * Takes an object out of the store. It gets plain Vectors back, holding
+	 * its last state.
+	 *
+	 * @param po
+	 *            the object to remove
+	 */
+	public void remove(PhysicsObject po) {
+		if (po.getBodyStore() != this)
+			throw new IllegalArgumentException("The object is not in this BodyStore!");
+
+		int h = po.getBodyHandle();
+		po.detach();
+
+		// move the last body into the hole so the handles stay dense
+		int last = --count;
+		if (h != last) {
+			posX[h] = posX[last];
+			posY[h] = posY[last];
+			velX[h] = velX[last];
+			velY[h] = velY[last];
+			accX[h] = accX[last];
+			accY[h] = accY[last];
+			mass[h] = mass[last];
+			muK[h] = muK[last];
+			muS[h] = muS[last];
+			gravityScale[h] = gravityScale[last];
+			movable[h] = movable[last];
+			asleep[h] = asleep[last];
+
+			bodies[h] = bodies[last];
+			bodies[h].setBodyHandle(h);
+		}
+
+		bodies[last] = null;
+	}
+
+	/**
+	 * Takes every object out of the store.
+	 */
+	public void clear() {
+		for (int h = 0; h < count; h++) {
+			bodies[h].detach();
+			bodies[h] = null;
+		}
+
+		count = 0;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public PhysicsObject getBody(int handle) {
+		return bodies[handle];
+	}
+
+	/**
+	 * Moves every movable body that is awake forward in time. This does the same thing as
+	 * Ball.update() and Balloon.update(), but for all bodies at once:
+	 *
+	 * a = g * gravityScale
+	 * v = v + a * t
+	 * p = p + v * t + 1/2 * a * t^2
+	 *
+	 * @param timeElapsed
+	 *            the length of the step, in seconds
+	 * @param gravity
+	 *            the acceleration due to gravity
+	 */
+	public void integrate(double timeElapsed, Vector gravity) {
+		double gx = gravity.getX();
+		double gy = gravity.getY();
+		double halfTimeSquared = 0.5 * timeElapsed * timeElapsed;
+
+		for (int h = 0; h < count; h++) {
+			if (!movable[h] || asleep[h])
+				continue;
+
+			accX[h] = gx * gravityScale[h];
+			accY[h] = gy * gravityScale[h];
+
+			velX[h] += accX[h] * timeElapsed;
+			velY[h] += accY[h] * timeElapsed;
+
+			posX[h] += velX[h] * timeElapsed + accX[h] * halfTimeSquared;
+			posY[h] += velY[h] * timeElapsed + accY[h] * halfTimeSquared;
+		}
+	}
+
+	/**
+	 * Grows the arrays, keeping the bodies that are already there.
+	 */
+	private void allocate(int capacity) {
+		posX = grow(posX, capacity);
+		posY = grow(posY, capacity);
+		velX = grow(velX, capacity);
+		velY = grow(velY, capacity);
+		accX = grow(accX, capacity);
+		accY = grow(accY, capacity);
+		mass = grow(mass, capacity);
+		muK = grow(muK, capacity);
+		muS = grow(muS, capacity);
+		gravityScale = grow(gravityScale, capacity);
+
+		movable = grow(movable, capacity);
+		asleep = grow(asleep, capacity);
+
+		PhysicsObject[] newBodies = new PhysicsObject[capacity];
+		System.arraycopy(bodies, 0, newBodies, 0, count);
+		bodies = newBodies;
+	}
+
+	private double[] grow(double[] old, int capacity) {
+		double[] result = new double[capacity];
+		if (old != null)
+			System.arraycopy(old, 0, result, 0, count);
+		return result;
+	}
+
+	private boolean[] grow(boolean[] old, int capacity) {
+		boolean[] result = new boolean[capacity];
+		if (old != null)
+			System.arraycopy(old, 0, result, 0, count);
+		return result;
+	}
+
+}
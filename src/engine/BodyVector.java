@@ -0,0 +1,155 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+import java.io.ObjectStreamException;
+
+/*+----------------------------------------------------------------------
+||
+||  Class BodyVector
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  A Vector that doesn't hold its own x and y, but reads and
+||                  writes one slot of a BodyStore instead. While a
+||                  PhysicsObject is in a BodyStore, its position, velocity
+||                  and acceleration are BodyVectors, so code that uses the
+||                  Vector methods (Collisions, the parts' getShape(), the
+||                  Swing layer) still sees the current values.
+||
+||                  When serialized, a plain Vector with the same values is
+||                  written instead, so saved games never refer to a store.
+||
+||  Inherits From:  Vector
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  POSITION, VELOCITY, ACCELERATION - which arrays of the
+||                  store the vector is backed by
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  BodyVector(BodyStore, int, int)
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  (overrides of the Vector accessors)
+||
+++-----------------------------------------------------------------------*/
+final class BodyVector extends Vector {
+
+	// attributes ///////////////////////////////////////////
+
+	private static final long serialVersionUID = -1330284934123950811L;
+
+	static final int POSITION = 0;
+	static final int VELOCITY = 1;
+	static final int ACCELERATION = 2;
+
+	private final BodyStore store;
+	private final int kind;
+	/**
+	 * The body's slot in the store. Changed by the store when bodies are
+	 * moved around after a removal.
+	 */
+	int handle;
+
+
+	// constructors /////////////////////////////////////////
+
+	BodyVector(BodyStore store, int kind, int handle) {
+		super();
+		this.store = store;
+		this.kind = kind;
+		this.handle = handle;
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	@Override
+	public double getX() {
+		switch (kind) {
+			case POSITION:
+				return store.posX[handle];
+			case VELOCITY:
+				return store.velX[handle];
+			default:
+				return store.accX[handle];
+		}
+	}
+
+	@Override
+	public double getY() {
+		switch (kind) {
+			case POSITION:
+				return store.posY[handle];
+			case VELOCITY:
+				return store.velY[handle];
+			default:
+				return store.accY[handle];
+		}
+	}
+
+	@Override
+	public void setX(double x) {
+		switch (kind) {
+			case POSITION:
+				store.posX[handle] = x;
+				break;
+			case VELOCITY:
+				store.velX[handle] = x;
+				break;
+			default:
+				store.accX[handle] = x;
+				break;
+		}
+	}
+
+	@Override
+	public void setY(double y) {
+		switch (kind) {
+			case POSITION:
+				store.posY[handle] = y;
+				break;
+			case VELOCITY:
+				store.velY[handle] = y;
+				break;
+			default:
+				store.accY[handle] = y;
+				break;
+		}
+	}
+
+	@Override
+	public double getMagnitude() {
+		double x = getX();
+		double y = getY();
+		return Math.sqrt(x * x + y * y);
+	}
+
+	/**
+	 * Serializes a detached copy instead of the view.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		return new Vector(getX(), getY());
+	}
+
+}
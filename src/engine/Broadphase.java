@@ -0,0 +1,57 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+import java.util.List;
+
+/*+----------------------------------------------------------------------
+||
+||  Interface Broadphase
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  The first (cheap) stage of collision detection. A
+||                  Broadphase looks at the whole world and throws away the
+||                  pairs of PhysicsObjects that cannot possibly be touching,
+||                  so that Collisions only has to run its (expensive) tests
+||                  on the pairs that are left over.
+||
+||                  Every pair that is found has an Updateable as its first
+||                  object. Pairs of two objects that do not move are never
+||                  reported, and a pair of two Updateables is only reported
+||                  once (in either order), so that Core solves it once.
+||
+|+-----------------------------------------------------------------------
+||
+||  Interface Methods:  + findPairs(List<? extends PhysicsObject>, PairList) : void
+||
+++-----------------------------------------------------------------------*/
+public interface Broadphase {
+
+	/**
+	 * Finds the pairs of PhysicsObjects that might be colliding and adds them
+	 * to the given list. The list is not cleared first.
+	 *
+	 * @param parts
+	 *            every PhysicsObject in the world
+	 * @param pairs
+	 *            where the candidate pairs are put
+	 */
+	public void findPairs(List<? extends PhysicsObject> parts, PairList pairs);
+
+}
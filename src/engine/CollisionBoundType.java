@@ -22,7 +22,10 @@ package engine;
  * rectangle. Used in collision detection algorithms.
  * 
  * A rectangle is a specific case of a polygon. It allows the collision detection to
- * make some assumptions, making it faster.
+ * make some assumptions, making it faster. A polygon can have any number of
+ * corners, as long as it is convex. An ellipse whose width and height are
+ * the same is a circle. A capsule is a rectangle with round ends: a line
+ * along its longer side, grown by half its shorter side.
  * 
  * @author Mark Ross
  */
@@ -53,6 +56,6 @@ package engine;
 ++-----------------------------------------------------------------------*/
 public enum CollisionBoundType {
 	
-	ELLIPSE, LINE, POLYGON, RECTANGLE
+	ELLIPSE, LINE, POLYGON, RECTANGLE, CAPSULE
 	
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+/*+----------------------------------------------------------------------
+||
+||  Class CollisionContext
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  The scratch space that Collisions needs to check a pair:
+||                  the CollisionResults it hands back and the Vectors and
+||                  arrays it uses along the way. These used to be static
+||                  fields of Collisions, which meant only one thread could
+||                  check for collisions at a time. Now every thread has its
+||                  own context (see Collisions.checkForCollision()), so Core
+||                  can check many pairs at once.
+||
+||                  The result returned by Collisions belongs to the context
+||                  and is overwritten by the next check, so it has to be
+||                  read (or copied) right away.
+||
+||                  The context also carries the separating axis that the
+||                  polygon checks try first, and counts how often it was
+||                  the right one.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + CollisionContext()
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  None
+||
+++-----------------------------------------------------------------------*/
+public class CollisionContext {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * Returned when there is *no* collision.
+	 */
+	final CollisionResult noCollisionDetected = new CollisionResult();
+
+	/**
+	 * Filled in and returned when there is a collision.
+	 */
+	final CollisionResult collisionDetected = new CollisionResult();
+
+	// scratch space for the collision routines
+	final Vector centerA = new Vector();
+	final Vector centerB = new Vector();
+	final double[] maxMinA = { 0.0, 0.0 };
+	final double[] maxMinB = { 0.0, 0.0 };
+	// scratch space for GjkEpa: the simplex, the polytope and the last
+	// support point
+	final double[] simplex = new double[6];
+	final double[] polytope = new double[GjkEpa.MAX_POLYTOPE * 2];
+	final double[] support = new double[2];
+
+	/**
+	 * The axis to test first (see SeparatingAxisCache) going into a check,
+	 * and the axis that separated the pair (or that it overlapped least on)
+	 * coming out of it.
+	 */
+	int axis = SeparatingAxisCache.NO_AXIS;
+	/**
+	 * How many checks were settled by testing only the remembered axis, and
+	 * how many had to test more axes. Running totals for the thread; Core
+	 * takes the difference over a step.
+	 */
+	int axisHits, axisMisses;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new CollisionContext.
+	 */
+	public CollisionContext() {
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+/*+----------------------------------------------------------------------
+||
+||  Interface CollisionHandler
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Checks whether two PhysicsObjects of one particular pair
+||                  of CollisionBoundTypes are colliding. Collisions keeps a
+||                  table of these, one for every pair of types, and looks up
+||                  the right one by the ordinals of the two types instead of
+||                  going through a chain of ifs. A new kind of shape only
+||                  needs its handlers put into the table (see
+||                  Collisions.setHandler()).
+||
+|+-----------------------------------------------------------------------
+||
+||  Interface Methods:  + check(PhysicsObject, PhysicsObject, CollisionContext) : CollisionResult
+||
+++-----------------------------------------------------------------------*/
+public interface CollisionHandler {
+
+	/**
+	 * Checks a pair whose bounding boxes are known to overlap. If they
+	 * collide, the projection vector of the result pushes <code>a</code> out
+	 * of <code>b</code>.
+	 *
+	 * @param a
+	 *            the first object; of the first type the handler was put into
+	 *            the table for
+	 * @param b
+	 *            the second object; of the second type
+	 * @param ctx
+	 *            the scratch space to use, and where the result comes from
+	 * @return the result, only valid until the next check with the same
+	 *         context
+	 */
+	public CollisionResult check(PhysicsObject a, PhysicsObject b, CollisionContext ctx);
+
+}
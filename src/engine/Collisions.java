@@ -18,11 +18,6 @@
 
 package engine;
 
-import java.awt.Polygon;
-import java.awt.Shape;
-import java.awt.geom.PathIterator;
-import java.awt.geom.Point2D;
-
 /*+----------------------------------------------------------------------
 ||
 ||  Class Collisions
@@ -40,10 +35,35 @@ import java.awt.geom.Point2D;
 ||                  You can find more information here:
 ||                  * http://www.codeproject.com/KB/GDI-plus/PolygonCollision.aspx
 ||                  * http://www.metanetsoftware.com/technique.html
+||
+||                  Ellipses that aren't circles (the Balloon) and capsules
+||                  can't be checked this way; they are left to GjkEpa, which
+||                  works for any convex shape.
+||
+||                  Which check is run for a pair is looked up in a table of
+||                  CollisionHandlers, indexed by the ordinals of the
+||                  CollisionBoundTypes of the two objects. A check written
+||                  for (ELLIPSE, POLYGON) is also put into the table for
+||                  (POLYGON, ELLIPSE), wrapped so that it swaps the objects
+||                  and turns the projection vector around. Pairs that no
+||                  check exists for (LINE, which has no shape yet) get a
+||                  handler that never finds a collision.
+||
+||                  Polygons can have any number of corners, as long as they
+||                  are convex. Rectangles only have their first two edges
+||                  tested, since the other two are parallel to them.
+||
+||                  The checks of polygons can be given the axis that
+||                  separated the pair last step (see SeparatingAxisCache).
+||                  It is tested first, and if it still separates them, no
+||                  other axis has to be tested.
 ||                  
 ||                  When a collision is detected, the collide() method can be called
 ||                  to perform the proper kinematics calculations. Right now, this causes
 ||                  PhysicsObjects to bounce and slow down due to friction.
+||                  Core solves the contacts of a whole step together with a
+||                  ContactSolver instead; collide() uses the same impulses
+||                  for a single contact.
 ||
 ||  Inherits From:  None
 ||
@@ -57,8 +77,14 @@ import java.awt.geom.Point2D;
 ||
 ||   Constructors:  N/A
 ||
-||  Class Methods:  + collide(PhysicsObject, PhysicsObject, CollisionResult) : void
+||  Class Methods:  + setHandler(CollisionBoundType, CollisionBoundType, CollisionHandler) : void
+||                  + getHandler(CollisionBoundType, CollisionBoundType) : CollisionHandler
+||                  + collide(PhysicsObject, PhysicsObject, CollisionResult) : void
+||                  + collide(PhysicsObject, PhysicsObject, double, double) : void
+||                  + prepare(PhysicsObject) : void
 ||                  + checkForCollision(PhysicsObject, PhysicsObject) : CollisionResult
+||                  + checkForCollision(PhysicsObject, PhysicsObject, CollisionContext) : CollisionResult
+||                  + checkForCollision(PhysicsObject, PhysicsObject, CollisionContext, int) : CollisionResult
 ||
 ||  Inst. Methods:  N/A
 ||
@@ -66,15 +92,125 @@ import java.awt.geom.Point2D;
 public class Collisions {
 	
 	/**
-	 * The default CollisionResult to return when there is *no* collision. Allows
-	 * for object re-use!! (Which design pattern is this??)
+	 * The CollisionResults and scratch space of each thread. They are re-used
+	 * so that a step doesn't create any garbage, and kept per thread so that
+	 * several threads can check for collisions at the same time.
 	 */
-	private static CollisionResult noCollisionDetected = new CollisionResult();
-	
-	private static CollisionResult collisionDetected = new CollisionResult();
+	private static final ThreadLocal<CollisionContext> contexts = new ThreadLocal<CollisionContext>() {
+		@Override
+		protected CollisionContext initialValue() {
+			return new CollisionContext();
+		}
+	};
+
+	/**
+	 * Used for the pairs of types that have no check. Never finds a
+	 * collision.
+	 */
+	private static final CollisionHandler NO_COLLISION = new CollisionHandler() {
+		public CollisionResult check(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
+			return ctx.noCollisionDetected;
+		}
+	};
+
+	/**
+	 * Circles are checked with the Separating Axis Theorem; any other
+	 * ellipse needs GjkEpa.
+	 */
+	private static final CollisionHandler ELLIPSE_WITH_ELLIPSE = new CollisionHandler() {
+		public CollisionResult check(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
+			if (isCircle(a) && isCircle(b))
+				return checkCircleWithCircle(a, b, ctx);
+			return GjkEpa.check(a, b, ctx);
+		}
+	};
+
+	private static final CollisionHandler ELLIPSE_WITH_POLYGON = new CollisionHandler() {
+		public CollisionResult check(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
+			if (isCircle(a))
+				return checkCircleWithPolygon(a, b, ctx);
+			return GjkEpa.check(a, b, ctx);
+		}
+	};
+
+	private static final CollisionHandler CONVEX_WITH_CONVEX = new CollisionHandler() {
+		public CollisionResult check(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
+			return GjkEpa.check(a, b, ctx);
+		}
+	};
+
+	private static final CollisionHandler POLYGON_WITH_POLYGON = new CollisionHandler() {
+		public CollisionResult check(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
+			return checkPolygonWithPolygon(a, b, ctx);
+		}
+	};
+
+	/**
+	 * The check for each pair of CollisionBoundTypes, indexed by their
+	 * ordinals (first object, then second).
+	 */
+	private static final CollisionHandler[][] handlers;
+
+	static {
+		int types = CollisionBoundType.values().length;
+		handlers = new CollisionHandler[types][types];
+		for (int i = 0; i < types; i++) {
+			for (int j = 0; j < types; j++)
+				handlers[i][j] = NO_COLLISION;
+		}
+
+		// a rectangle is checked like any other polygon
+		setHandler(CollisionBoundType.ELLIPSE, CollisionBoundType.ELLIPSE, ELLIPSE_WITH_ELLIPSE);
+		setHandler(CollisionBoundType.ELLIPSE, CollisionBoundType.RECTANGLE, ELLIPSE_WITH_POLYGON);
+		setHandler(CollisionBoundType.ELLIPSE, CollisionBoundType.POLYGON, ELLIPSE_WITH_POLYGON);
+		setHandler(CollisionBoundType.RECTANGLE, CollisionBoundType.RECTANGLE, POLYGON_WITH_POLYGON);
+		setHandler(CollisionBoundType.RECTANGLE, CollisionBoundType.POLYGON, POLYGON_WITH_POLYGON);
+		setHandler(CollisionBoundType.POLYGON, CollisionBoundType.POLYGON, POLYGON_WITH_POLYGON);
+
+		// capsules have no check of their own
+		setHandler(CollisionBoundType.CAPSULE, CollisionBoundType.CAPSULE, CONVEX_WITH_CONVEX);
+		setHandler(CollisionBoundType.CAPSULE, CollisionBoundType.ELLIPSE, CONVEX_WITH_CONVEX);
+		setHandler(CollisionBoundType.CAPSULE, CollisionBoundType.RECTANGLE, CONVEX_WITH_CONVEX);
+		setHandler(CollisionBoundType.CAPSULE, CollisionBoundType.POLYGON, CONVEX_WITH_CONVEX);
+	}
 	
 	// behaviors ////////////////////////////////////////////
 
+	/**
+	 * Puts the check for a pair of CollisionBoundTypes into the table. If the
+	 * types differ, the handler is also put in for the swapped pair (b, a),
+	 * wrapped so that it is called with the objects swapped and its
+	 * projection vector is turned around.
+	 * 
+	 * @param a
+	 *            the type of the first object the handler takes
+	 * @param b
+	 *            the type of the second object
+	 * @param handler
+	 *            the check
+	 */
+	public static void setHandler(CollisionBoundType a, CollisionBoundType b, CollisionHandler handler) {
+		if (handler == null)
+			throw new IllegalArgumentException("CollisionHandler cannot be null!");
+
+		handlers[a.ordinal()][b.ordinal()] = handler;
+		if (a != b)
+			handlers[b.ordinal()][a.ordinal()] = new SwappedHandler(handler);
+	}
+
+	/**
+	 * Gets the check that is run for a pair of CollisionBoundTypes.
+	 * 
+	 * @param a
+	 *            the type of the first object
+	 * @param b
+	 *            the type of the second object
+	 * @return the handler; never null
+	 */
+	public static CollisionHandler getHandler(CollisionBoundType a, CollisionBoundType b) {
+		return handlers[a.ordinal()][b.ordinal()];
+	}
+
 	/**
 	 * Makes two given parts collide by calculating the reaction between the two
 	 * parts. Makes things bounce, etc.
@@ -88,98 +224,85 @@ public class Collisions {
 	 *            occurred.
 	 */
 	public static void collide(PhysicsObject a, PhysicsObject b, CollisionResult collResult) {
-		// if both parts are Updateable, use conservation of momentum; if not,
-		// use inelastic collision
-		// TODO how can we merge these two?
-		if (a instanceof Updateable && b instanceof Updateable)
-			elasticCollision(a, b, collResult.getProjectionVector().getNormalized());
-		else
-			inelasticCollision(a, b, collResult.getProjectionVector().getNormalized());
+		Vector projection = collResult.getProjectionVector();
+		collide(a, b, projection.getX(), projection.getY());
 	}
 
 	/**
-	 * Makes two objects collide while conserving their momentum.
+	 * Same as collide(PhysicsObject, PhysicsObject, CollisionResult), but
+	 * takes the projection vector as two doubles. Used by Core, which stores
+	 * the contacts it finds without their CollisionResults.
 	 * 
 	 * @param a
-	 *            a <code>Part</code> involved in the collision
+	 *            a <code>Part</code>
 	 * @param b
-	 *            another <code>Part</code> involved in the collision
-	 * @param collAxis
-	 *            a Vector representing the direction in which the collision
-	 *            occurred.
+	 *            a <code>Part</code>
+	 * @param projX
+	 *            the x-component of the projection vector
+	 * @param projY
+	 *            the y-component of the projection vector
 	 */
-	private static void elasticCollision(PhysicsObject a, PhysicsObject b, Vector collAxis) {
-		// get their velocities *projected* onto the collision axis. save their
-		// velocities *projected* onto a vector perpendicular to the axis of
-		// collision.
-		Vector v_a_coll = a.getVelocity().projectionOnto(collAxis);
-		Vector v_b_coll = b.getVelocity().projectionOnto(collAxis);
-
-		// get components perpendicular to collision
-		Vector collAxis_n = collAxis.getRightHandNormal();
-		Vector v_a_save = a.getVelocity().projectionOnto(collAxis_n);
-		Vector v_b_save = b.getVelocity().projectionOnto(collAxis_n);
-		
-		// TODO these equations can only be used in the proper inertial frame of reference (where one of the
-		// velocities is zero)...see WP
-
-		// perform conservation of momentum calculation
-		// v_1_f = (m_1 - m_2)/(m_1 + m_2) * v_1_i + (2 * m_2)/(m_1 + m_2) *
-		// v_2_i
-		// v_2_f = (2 * m_1)/(m_1 + m_2) * v_1_i + (m_2 - m_1)/(m_1 + m_2) *
-		// v_2_i
-		//Vector v_a_coll_f = Vector.add(v_a_coll.scalarProduct(((a.getMass() - b.getMass()) / (a.getMass() + b.getMass()))), (v_b_coll.scalarProduct(2 * b.getMass() / (a.getMass() + b.getMass()))));
-		//Vector v_b_coll_f = Vector.add(v_a_coll.scalarProduct(2 * a.getMass() / (a.getMass() + b.getMass())), (v_b_coll.scalarProduct((a.getMass() - b.getMass()) / (a.getMass() + b.getMass()))));
-		
-		// v_a_f = (C_R * m_b (v_b_i - v_a_i) + m_a * v_a_i + m_b * v_b_i) / (m_a + m_b)
-		// v_a_f = (C_R * m_a (v_a_i - v_b_i) + m_a * v_a_i + m_b * v_b_i) / (m_a + m_b)
-		Vector v_a_collTimesMass = v_a_coll.scalarProduct(a.getMass());
-		Vector v_b_collTimesMass = v_b_coll.scalarProduct(b.getMass());
-		double totalMass = a.getMass() + b.getMass();
-		double C_R = Math.max(a.getMUk(), b.getMUk());
-		//TODO need another way to get C_R instead of faking with mu_k
-		
-		Vector v_a_coll_f = Vector.add(Vector.add(Vector.subtract(v_b_coll, v_a_coll).scalarProduct(b.getMass() * C_R), v_a_collTimesMass), v_b_collTimesMass).scalarProduct(1.0 / totalMass);
-		Vector v_b_coll_f = Vector.add(Vector.add(Vector.subtract(v_a_coll, v_b_coll).scalarProduct(b.getMass() * C_R), v_a_collTimesMass), v_b_collTimesMass).scalarProduct(1.0 / totalMass);
-		
-		//Vector v_a_saveTimesMass = v_a_save.scalarProduct(a.getMass());
-		//Vector v_b_saveTimesMass = v_b_save.scalarProduct(b.getMass());
-		
-		//Vector v_a_save_f = Vector.add(Vector.add(Vector.subtract(v_b_save, v_a_save).scalarProduct(b.getMass() * C_R), v_a_saveTimesMass), v_b_saveTimesMass).scalarProduct(1.0 / totalMass);
-		//Vector v_b_save_f = Vector.add(Vector.add(Vector.subtract(v_a_save, v_b_save).scalarProduct(b.getMass() * C_R), v_a_saveTimesMass), v_b_saveTimesMass).scalarProduct(1.0 / totalMass);
-
-		// add the saved velocity with the calculated velocity for each part
-		a.setVelocity(Vector.add(v_a_save, v_a_coll_f));
-		b.setVelocity(Vector.add(v_b_save, v_b_coll_f));
+	public static void collide(PhysicsObject a, PhysicsObject b, double projX, double projY) {
+		// the collision axis is the unit vector of the projection vector
+		double length = Math.sqrt(projX * projX + projY * projY);
+		if (length == 0.0)
+			return;
+
+		double nx = projX / length;
+		double ny = projY / length;
+
+		// a single contact, solved with the same impulses as ContactSolver.
+		// with only one contact, one pass is exact. a part that doesn't move
+		// (or is asleep) has no inverse mass, so it is never changed.
+		double invA = ContactSolver.getInverseMass(a);
+		double invB = ContactSolver.getInverseMass(b);
+		if (invA + invB == 0.0)
+			return;
+
+		double mass = 1.0 / (invA + invB);
+		Vector v_a = a.getVelocity();
+		Vector v_b = b.getVelocity();
+
+		// the normal impulse: stop the parts moving into each other, and
+		// bounce them if they hit hard enough
+		double dvX = v_a.getX() - v_b.getX();
+		double dvY = v_a.getY() - v_b.getY();
+		double speed = dvX * nx + dvY * ny;
+		if (speed >= 0.0)
+			return;
+
+		double target = speed < -ContactSolver.RESTITUTION_SPEED ? -speed * ContactSolver.getRestitution(a, b) : 0.0;
+		double normalImpulse = mass * (target - speed);
+
+		// friction along the right-hand normal (tx, ty) = (-ny, nx), no more
+		// than mu times the normal impulse
+		double tx = ny * -1;
+		double ty = nx;
+		double maxFriction = ContactSolver.getFriction(a, b) * normalImpulse;
+		double tangentImpulse = Math.max(-maxFriction, Math.min(-mass * (dvX * tx + dvY * ty), maxFriction));
+
+		double px = normalImpulse * nx + tangentImpulse * tx;
+		double py = normalImpulse * ny + tangentImpulse * ty;
+		if (invA != 0.0)
+			v_a.set(v_a.getX() + px * invA, v_a.getY() + py * invA);
+		if (invB != 0.0)
+			v_b.set(v_b.getX() - px * invB, v_b.getY() - py * invB);
 	}
 
 	/**
-	 * Makes two objects collide, accounting for energy lost (due to
-	 * deformation, etc.).
+	 * Brings the data that checkForCollision() reads from an object (its
+	 * bounding box, and its vertices and edge normals if it is a polygon) up
+	 * to date. These are cached and re-calculated lazily, which is not safe
+	 * to do from several threads at once, so Core calls this for every
+	 * object before it checks pairs in parallel.
 	 * 
-	 * @param a
-	 *            a <code>Part</code> involved in the collision
-	 * @param b
-	 *            another <code>Part</code> involved in the collision
-	 * @param collAxis
-	 *            a Vector representing the direction in which the collision
-	 *            occurred.
+	 * @param po
+	 *            the object that is about to be checked
 	 */
-	private static void inelasticCollision(PhysicsObject a, PhysicsObject b, Vector collAxis) {
-		// project a's velocity onto collision axis (this is the *bounce*)
-		Vector v_coll = a.getVelocity().projectionOnto(collAxis);
-		v_coll.setX(v_coll.getX() * -1 * a.getMUk()); // kinetic friction is used because 
-		v_coll.setY(v_coll.getY() * -1 * a.getMUk()); // we don't have a restitution field
-		
-		// TODO ERROR this is all wrong. this and the above method need to be merged somehow
-
-		// project a's velocity onto vector perpendicular to collision axis
-		// (used for the *friction*)
-		Vector v_perp = a.getVelocity().projectionOnto(collAxis.getRightHandNormal());
-		v_perp.setX(v_perp.getX() * b.getMUs()); // this is wrong too
-		v_perp.setY(v_perp.getY() * b.getMUs());
-
-		a.setVelocity(Vector.add(v_coll, v_perp));
+	public static void prepare(PhysicsObject po) {
+		po.getMinX();
+		if (po.getCollisionBoundType() == CollisionBoundType.RECTANGLE || po.getCollisionBoundType() == CollisionBoundType.POLYGON)
+			po.getVertices();
 	}
 
 	/**
@@ -196,30 +319,57 @@ public class Collisions {
 	 * 			@see <code>CollisionResult</code>
 	 */
 	public static CollisionResult checkForCollision(PhysicsObject a, PhysicsObject b) {
+		return checkForCollision(a, b, contexts.get());
+	}
+
+	/**
+	 * Same as checkForCollision(PhysicsObject, PhysicsObject), but uses the
+	 * given context instead of the current thread's. The result belongs to
+	 * the context and is only valid until its next check.
+	 * 
+	 * @param a
+	 *            a <code>Part</code> that is being checked for a collision
+	 *            with <code>b</code>
+	 * @param b
+	 *            a <code>Part</code> that is being checked for a collision
+	 *            with <code>a</code>
+	 * @param ctx
+	 *            the scratch space to use; must not be used by another thread
+	 *            at the same time
+	 * @return the result, @see <code>CollisionResult</code>
+	 */
+	public static CollisionResult checkForCollision(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
+		return checkForCollision(a, b, ctx, SeparatingAxisCache.NO_AXIS);
+	}
+
+	/**
+	 * Same as checkForCollision(PhysicsObject, PhysicsObject,
+	 * CollisionContext), but tests the given axis first. Afterwards the
+	 * context's axis is the one that separated the pair, or the one it
+	 * overlapped least on, to be passed in again next step.
+	 * 
+	 * @param a
+	 *            a <code>Part</code> that is being checked for a collision
+	 *            with <code>b</code>
+	 * @param b
+	 *            a <code>Part</code> that is being checked for a collision
+	 *            with <code>a</code>
+	 * @param ctx
+	 *            the scratch space to use; must not be used by another thread
+	 *            at the same time
+	 * @param axis
+	 *            the axis this pair ended with last step, or
+	 *            SeparatingAxisCache.NO_AXIS
+	 * @return the result, @see <code>CollisionResult</code>
+	 */
+	public static CollisionResult checkForCollision(PhysicsObject a, PhysicsObject b, CollisionContext ctx, int axis) {
+		ctx.axis = axis;
+
 		// check bounding box first
-		if (!a.getShape().intersects(b.getShape().getBounds()))
-			return noCollisionDetected;
+		if (!a.boundsOverlap(b))
+			return ctx.noCollisionDetected;
 		
-		if (a.getCollisionBoundType() == CollisionBoundType.ELLIPSE && b.getCollisionBoundType() == CollisionBoundType.ELLIPSE) {
-			return checkCircleWithCircle(a, b);
-		}
-		else if ((a.getCollisionBoundType() == CollisionBoundType.ELLIPSE && b.getCollisionBoundType() == CollisionBoundType.RECTANGLE)) {
-			//return checkCircleWithRectangle(a, b);
-			return checkCircleWithPolygon(a, b);
-		}
-		else if ((a.getCollisionBoundType() == CollisionBoundType.ELLIPSE && b.getCollisionBoundType() == CollisionBoundType.POLYGON)) {
-			return checkCircleWithPolygon(a, b);
-		}
-		else if ((a.getCollisionBoundType() == CollisionBoundType.RECTANGLE && b.getCollisionBoundType() == CollisionBoundType.ELLIPSE)) {
-			//return checkCircleWithRectangle(b, a);
-			return checkCircleWithPolygon(b, a);
-		}
-		else if ((a.getCollisionBoundType() == CollisionBoundType.RECTANGLE || a.getCollisionBoundType() == CollisionBoundType.POLYGON) && (b.getCollisionBoundType() == CollisionBoundType.RECTANGLE || b.getCollisionBoundType() == CollisionBoundType.POLYGON)) {
-			return checkPolygonWithPolygon(a, b);
-		}
-
-		// default - no collision
-		return noCollisionDetected;
+		return handlers[a.getCollisionBoundType().ordinal()][b.getCollisionBoundType().ordinal()].check(a, b, ctx);
 	}
 
 	/**
@@ -229,38 +379,48 @@ public class Collisions {
 	 * @param b
 	 * @return
 	 */
-	private static CollisionResult checkCircleWithCircle(PhysicsObject a, PhysicsObject b) {
-		//CollisionResult result = new CollisionResult();
-
-		// use arrays so we can pass them by *reference*
-		double[] maxMinA = { 0.0, 0.0 };
-		double[] maxMinB = { 0.0, 0.0 };
-
-		Vector axis = Vector.subtract(b.getCenter(), a.getCenter()).getNormalized();
+	private static CollisionResult checkCircleWithCircle(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
+		a.getCenter(ctx.centerA);
+		b.getCenter(ctx.centerB);
+
+		double axisX = ctx.centerB.getX() - ctx.centerA.getX();
+		double axisY = ctx.centerB.getY() - ctx.centerA.getY();
+		double length = Math.sqrt(axisX * axisX + axisY * axisY);
+
+		if (length == 0.0) {
+			// same center; any axis will do, so push straight up (this used to
+			// give NaN)
+			axisX = 0.0;
+			axisY = 1.0;
+		}
+		else {
+			axisX /= length;
+			axisY /= length;
+		}
 
 		// project the circles onto the axis
-		projectCircle(axis, a.getCenter(), a.getWidth() / 2, maxMinA);
-		projectCircle(axis, b.getCenter(), b.getWidth() / 2, maxMinB);
+		projectCircle(axisX, axisY, ctx.centerA, a.getWidth() / 2, ctx.maxMinA);
+		projectCircle(axisX, axisY, ctx.centerB, b.getWidth() / 2, ctx.maxMinB);
 
 		// find the distance between the projections
-		double intervalDistance = getIntervalDistance(maxMinA, maxMinB);
+		double intervalDistance = getIntervalDistance(ctx.maxMinA, ctx.maxMinB);
 
 		if (intervalDistance >= 0)
 			// this axis is a separating axis, exit early
-			return noCollisionDetected;
+			return ctx.noCollisionDetected;
 
 		intervalDistance = Math.abs(intervalDistance);
 
-		Vector translationAxis = axis;
-
-		Vector d = Vector.subtract(a.getCenter(), b.getCenter());
-		if (Vector.dotProduct(d, translationAxis) < 0)
-			translationAxis = new Vector(translationAxis.getX() * -1, translationAxis.getY() * -1);
+		// the axis points from a to b, but a has to be pushed away from b
+		if (length != 0.0) {
+			axisX *= -1;
+			axisY *= -1;
+		}
 
-		collisionDetected.setProjectionVector(new Vector(translationAxis.getX() * intervalDistance, translationAxis.getY() * intervalDistance));
+		ctx.collisionDetected.getProjectionVector().set(axisX * intervalDistance, axisY * intervalDistance);
 
-		collisionDetected.setCollisionOccurred(true);
-		return collisionDetected;
+		ctx.collisionDetected.setCollisionOccurred(true);
+		return ctx.collisionDetected;
 	}
 
 	/**
@@ -344,44 +504,53 @@ public class Collisions {
 	 * @param b
 	 * @return
 	 */
-	private static CollisionResult checkCircleWithPolygon(PhysicsObject a, PhysicsObject b) {
-		//CollisionResult result = new CollisionResult(); // TODO is it possible to modify these methods so this can be placed after the early exit in the for loop?
-
+	private static CollisionResult checkCircleWithPolygon(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
 		// make sure circle is within rectangular bounds of polygon first. Exit
 		// early if not.
 		//if (!checkCircleWithRectangle(a, b).getCollisionOccurred())
 		//	return result;
 
-		double[] maxMinA = { 0.0, 0.0 };
-		double[] maxMinB = { 0.0, 0.0 };
+		double[] verticesB = b.getVertices();
+		double[] normalsB = b.getEdgeNormals();
 
-		//Shape shapeB = (Shape) b.getShape();
-		PathIterator pi = b.getShape().getPathIterator(null);
-		double[][] polyPoints = new double[4][6]; // four vertices, and PathIterator.currentSegment() needs an array of size 6
-		
-		for (int i = 0; i <= 3; i++) {
-			pi.currentSegment(polyPoints[i]);
-			pi.next();
-		}
+		a.getCenter(ctx.centerA);
+		b.getCenter(ctx.centerB);
+		double dX = ctx.centerA.getX() - ctx.centerB.getX();
+		double dY = ctx.centerA.getY() - ctx.centerB.getY();
 		
 		double minIntervalDistance = Double.MAX_VALUE;
-		Vector translationAxis = new Vector();
-		Vector edge = new Vector();
+		int minAxis = SeparatingAxisCache.NO_AXIS;
+		int axisCount = getAxisCount(b, normalsB);
+
+		// try the axis that separated them last step first
+		int lastAxis = ctx.axis;
+		if (lastAxis >= 0 && lastAxis < axisCount) {
+			projectCircle(normalsB[lastAxis * 2], normalsB[lastAxis * 2 + 1], ctx.centerA, a.getWidth() / 2, ctx.maxMinA);
+			projectPolygon(normalsB[lastAxis * 2], normalsB[lastAxis * 2 + 1], verticesB, ctx.maxMinB);
+
+			if (getIntervalDistance(ctx.maxMinA, ctx.maxMinB) >= 0) {
+				ctx.axisHits++;
+				return ctx.noCollisionDetected;
+			}
+		}
+		ctx.axisMisses++;
 
-		for (int i = 0; i <= 3; i++) {
-			Utility.getEdge(edge, polyPoints, i);
-			// get the axis perpendicular to the edge of the polygon
-			Vector axis = edge.getRightHandNormal().getNormalized();
+		for (int i = 0; i < axisCount * 2; i += 2) {
+			// the axis perpendicular to the edge of the polygon
+			double axisX = normalsB[i];
+			double axisY = normalsB[i + 1];
 
 			// project the shapes onto the axis
-			projectCircle(axis, a.getCenter(), a.getWidth() / 2, maxMinA);
-			projectPolygon(axis, polyPoints, maxMinB);
+			projectCircle(axisX, axisY, ctx.centerA, a.getWidth() / 2, ctx.maxMinA);
+			projectPolygon(axisX, axisY, verticesB, ctx.maxMinB);
 
-			double intervalDistance = getIntervalDistance(maxMinA, maxMinB);
+			double intervalDistance = getIntervalDistance(ctx.maxMinA, ctx.maxMinB);
 
-			if (intervalDistance >= 0)
+			if (intervalDistance >= 0) {
 				// there is a separating axis, exit early
-				return noCollisionDetected;
+				ctx.axis = i / 2;
+				return ctx.noCollisionDetected;
+			}
 
 			// check if the interval distance is the *minimum* one. if so, store
 			// the interval distance and the current distance. this will be used
@@ -389,20 +558,22 @@ public class Collisions {
 			intervalDistance = Math.abs(intervalDistance);
 			if (intervalDistance < minIntervalDistance) {
 				minIntervalDistance = intervalDistance;
-				translationAxis = axis;
+				minAxis = i / 2;
 
-				Vector d = Vector.subtract(a.getCenter(), b.getCenter());
-				if (Vector.dotProduct(d, translationAxis) < 0)
-					translationAxis = new Vector(translationAxis.getX() * -1, translationAxis.getY() * -1);
+				if (dX * axisX + dY * axisY < 0) {
+					axisX *= -1;
+					axisY *= -1;
+				}
 
-				collisionDetected.setProjectionVector(new Vector(translationAxis.getX() * minIntervalDistance, translationAxis.getY() * minIntervalDistance));
+				ctx.collisionDetected.getProjectionVector().set(axisX * minIntervalDistance, axisY * minIntervalDistance);
 			}
 		}
 
 		// edges checked in last loop, now check vertices?!?!?!
 
-		collisionDetected.setCollisionOccurred(true);
-		return collisionDetected;
+		ctx.axis = minAxis;
+		ctx.collisionDetected.setCollisionOccurred(true);
+		return ctx.collisionDetected;
 	}
 
 	/**
@@ -410,48 +581,57 @@ public class Collisions {
 	 * @param b
 	 * @return
 	 */
-	private static CollisionResult checkPolygonWithPolygon(PhysicsObject a, PhysicsObject b) {
-		//CollisionResult result = new CollisionResult();
-		
-		double[] maxMinA = { 0.0, 0.0 };
-		double[] maxMinB = { 0.0, 0.0 };
-
-		PathIterator piA = a.getShape().getPathIterator(null);
-		double[][] polyPointsA = new double[4][6]; // four vertices, and PathIterator.currentSegment() needs an array of size 6
-		
-		for (int i = 0; i <= 3; i++) {
-			piA.currentSegment(polyPointsA[i]);
-			piA.next();
-		}
-		
-		PathIterator piB = b.getShape().getPathIterator(null);
-		double[][] polyPointsB = new double[4][6]; // four vertices, and PathIterator.currentSegment() needs an array of size 6
-		
-		for (int i = 0; i <= 3; i++) {
-			piB.currentSegment(polyPointsB[i]);
-			piB.next();
-		}
+	private static CollisionResult checkPolygonWithPolygon(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
+		double[] verticesA = a.getVertices();
+		double[] verticesB = b.getVertices();
+		double[] normalsA = a.getEdgeNormals();
+		double[] normalsB = b.getEdgeNormals();
+
+		a.getCenter(ctx.centerA);
+		b.getCenter(ctx.centerB);
+		double dX = ctx.centerA.getX() - ctx.centerB.getX();
+		double dY = ctx.centerA.getY() - ctx.centerB.getY();
 		
 		double minIntervalDistance = Double.MAX_VALUE;
-		Vector translationAxis = new Vector();
-		Vector edge = new Vector();
+		int minAxis = SeparatingAxisCache.NO_AXIS;
+		int axisCountA = getAxisCount(a, normalsA);
+		int axisCount = axisCountA + getAxisCount(b, normalsB);
+
+		// try the axis that separated them last step first
+		int lastAxis = ctx.axis;
+		if (lastAxis >= 0 && lastAxis < axisCount) {
+			double[] normals = lastAxis < axisCountA ? normalsA : normalsB;
+			int k = lastAxis < axisCountA ? lastAxis * 2 : (lastAxis - axisCountA) * 2;
+			projectPolygon(normals[k], normals[k + 1], verticesA, ctx.maxMinA);
+			projectPolygon(normals[k], normals[k + 1], verticesB, ctx.maxMinB);
+
+			if (getIntervalDistance(ctx.maxMinA, ctx.maxMinB) >= 0) {
+				ctx.axisHits++;
+				return ctx.noCollisionDetected;
+			}
+		}
+		ctx.axisMisses++;
 
 		// check all edges of both polygons, find the shortest projection
-		// (translation)		
-		for (int i = 0; i <= 3; i++) {
-			Utility.getEdge(edge, polyPointsA, i);
-			// get the axis perpendicular to the edge of the polygon
-			Vector axis = edge.getRightHandNormal().getNormalized();
+		// (translation)
+		for (int i = 0; i < axisCount * 2; i += 2) {
+			// the axis perpendicular to the edge of the polygon
+			double[] normals = i < axisCountA * 2 ? normalsA : normalsB;
+			int k = i < axisCountA * 2 ? i : i - axisCountA * 2;
+			double axisX = normals[k];
+			double axisY = normals[k + 1];
 
 			// project the shapes onto the axis
-			projectPolygon(axis, polyPointsA, maxMinA);
-			projectPolygon(axis, polyPointsB, maxMinB);
+			projectPolygon(axisX, axisY, verticesA, ctx.maxMinA);
+			projectPolygon(axisX, axisY, verticesB, ctx.maxMinB);
 
-			double intervalDistance = getIntervalDistance(maxMinA, maxMinB);
+			double intervalDistance = getIntervalDistance(ctx.maxMinA, ctx.maxMinB);
 
-			if (intervalDistance >= 0)
+			if (intervalDistance >= 0) {
 				// this axis is a separating axis, exit early
-				return noCollisionDetected;
+				ctx.axis = i / 2;
+				return ctx.noCollisionDetected;
+			}
 
 			// check if the interval distance is the *minimum* one. if so, store
 			// the interval distance and the current distance. this will be used
@@ -459,57 +639,56 @@ public class Collisions {
 			intervalDistance = Math.abs(intervalDistance);
 			if (intervalDistance < minIntervalDistance) {
 				minIntervalDistance = intervalDistance;
-				translationAxis = axis;
+				minAxis = i / 2;
 
-				Vector d = Vector.subtract(a.getCenter(), b.getCenter());
-				if (Vector.dotProduct(d, translationAxis) < 0)
-					translationAxis = new Vector(translationAxis.getX() * -1, translationAxis.getY() * -1);
+				if (dX * axisX + dY * axisY < 0) {
+					axisX *= -1;
+					axisY *= -1;
+				}
 
-				collisionDetected.setProjectionVector(new Vector(translationAxis.getX() * minIntervalDistance, translationAxis.getY() * minIntervalDistance));
+				ctx.collisionDetected.getProjectionVector().set(axisX * minIntervalDistance, axisY * minIntervalDistance);
 			}
 		}
 
-		for (int i = 0; i <= 3; i++) {
-			Utility.getEdge(edge, polyPointsB, i);
-			// get the axis perpendicular to the edge of the polygon
-			Vector axis = edge.getRightHandNormal().getNormalized();
-
-			// project the shapes onto the axis
-			projectPolygon(axis, polyPointsA, maxMinA);
-			projectPolygon(axis, polyPointsB, maxMinB);
-
-			double intervalDistance = getIntervalDistance(maxMinA, maxMinB);
-
-			if (intervalDistance >= 0)
-				// this axis is a separating axis, exit early
-				return noCollisionDetected;
-
-			// check if the interval distance is the *minimum* one. if so, store
-			// the interval distance and the current distance. this will be used
-			// to calculate the minimum translation vector
-			intervalDistance = Math.abs(intervalDistance);
-			if (intervalDistance < minIntervalDistance) {
-				minIntervalDistance = intervalDistance;
-				translationAxis = axis;
-
-				Vector d = Vector.subtract(a.getCenter(), b.getCenter());
+		ctx.axis = minAxis;
+		ctx.collisionDetected.setCollisionOccurred(true);
+		return ctx.collisionDetected;
+	}
 
-				if (Vector.dotProduct(d, translationAxis) < 0)
-					translationAxis = new Vector(translationAxis.getX() * -1, translationAxis.getY() * -1);
+	/**
+	 * Checks if an ELLIPSE is a circle, which the Separating Axis Theorem can
+	 * check by itself.
+	 */
+	private static boolean isCircle(PhysicsObject po) {
+		return po.getWidth() == po.getHeight();
+	}
 
-				collisionDetected.setProjectionVector(new Vector(translationAxis.getX() * minIntervalDistance, translationAxis.getY() * minIntervalDistance));
-			}
-		}
+	/**
+	 * Gets the number of edge normals of a polygon that have to be tested. A
+	 * rectangle's last two edges are parallel to its first two, so they would
+	 * only repeat the same tests; any other polygon needs all of them.
+	 * 
+	 * @param po
+	 *            the polygon
+	 * @param normals
+	 *            its edge normals
+	 * @return the number of axes, which are the first normals in the array
+	 */
+	private static int getAxisCount(PhysicsObject po, double[] normals) {
+		if (po.getCollisionBoundType() == CollisionBoundType.RECTANGLE && normals.length == 8)
+			return 2;
 
-		collisionDetected.setCollisionOccurred(true);
-		return collisionDetected;
+		return normals.length / 2;
 	}
 
 	/**
 	 * Projects the circle onto a given axis.
 	 * 
-	 * @param axis
-	 *            the axis upon which you want to project the circle
+	 * @param axisX
+	 *            the x-component of the (unit) axis upon which you want to
+	 *            project the circle
+	 * @param axisY
+	 *            the y-component of the axis
 	 * @param center
 	 *            the <code>Vector</code> position of the circle
 	 * @param radius
@@ -518,36 +697,36 @@ public class Collisions {
 	 *            used to keep track of the max/min values of the shape on the
 	 *            axis
 	 */
-	private static void projectCircle(Vector axis, Vector center, double radius, double[] maxMin) {
-		// use dot product to project a point onto the axis
-		double d = Vector.dotProduct(axis, center);
-		maxMin[0] = d;
-		maxMin[1] = d;
-
-		d = Vector.dotProduct(axis, new Vector(center.getX() + axis.getX() * radius, center.getY() + axis.getY() * radius));
-
-		// save the point if it is a max or min
-		if (d < maxMin[1])
-			maxMin[1] = d;
-		else if (d > maxMin[0])
-			maxMin[0] = d;
-
-		d = Vector.dotProduct(axis, new Vector(center.getX() + axis.getX() * radius * -1, center.getY() + axis.getY() * radius * -1));
-		if (d < maxMin[1])
-			maxMin[1] = d;
-		else if (d > maxMin[0])
-			maxMin[0] = d;
+	private static void projectCircle(double axisX, double axisY, Vector center, double radius, double[] maxMin) {
+		// use dot product to project the center onto the axis. the axis is a
+		// unit vector, so the circle reaches one radius either side of it.
+		double d = center.dotProduct(axisX, axisY);
+		maxMin[0] = d + radius;
+		maxMin[1] = d - radius;
 	}
 
-	private static void projectPolygon(Vector axis, double[][] polyPoints, double[] maxMin) {
+	/**
+	 * Projects a polygon onto a given axis.
+	 * 
+	 * @param axisX
+	 *            the x-component of the axis
+	 * @param axisY
+	 *            the y-component of the axis
+	 * @param vertices
+	 *            the corners of the polygon, as x0, y0, x1, y1, etc.
+	 * @param maxMin
+	 *            used to keep track of the max/min values of the shape on the
+	 *            axis
+	 */
+	private static void projectPolygon(double axisX, double axisY, double[] vertices, double[] maxMin) {
 		// use dot product to project a point onto the axis
-		double d = Vector.dotProduct(axis, new Vector(polyPoints[0][0], polyPoints[0][1]));
+		double d = axisX * vertices[0] + axisY * vertices[1];
 		maxMin[0] = d;
 		maxMin[1] = d;
 
 		// save the point if it is a max or min
-		for (int i = 1; i <= 3; i++) {
-			d = Vector.dotProduct(axis, new Vector(polyPoints[i][0], polyPoints[i][1]));
+		for (int i = 2; i < vertices.length; i += 2) {
+			d = axisX * vertices[i] + axisY * vertices[i + 1];
 			if (d < maxMin[1])
 				maxMin[1] = d;
 			else if (d > maxMin[0])
@@ -567,4 +746,29 @@ public class Collisions {
 			return maxMinA[1] - maxMinB[0];
 	}
 	
+	/**
+	 * Runs a check written for the types (b, a) on a pair (a, b), and turns
+	 * the projection vector around so that it pushes a out of b again.
+	 */
+	private static class SwappedHandler implements CollisionHandler {
+
+		private final CollisionHandler handler;
+
+		SwappedHandler(CollisionHandler handler) {
+			this.handler = handler;
+		}
+
+		public CollisionResult check(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
+			CollisionResult result = handler.check(b, a, ctx);
+
+			if (result.getCollisionOccurred()) {
+				Vector projection = result.getProjectionVector();
+				projection.set(-projection.getX(), -projection.getY());
+			}
+
+			return result;
+		}
+
+	}
+
 }
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+/*+----------------------------------------------------------------------
+||
+||  Class ContactCache
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Remembers the contacts of the last step, so that the
+||                  ContactSolver can start from the impulses it ended with
+||                  last time instead of from zero (warm starting). A part
+||                  resting on the floor needs the same impulse every step,
+||                  so starting from last step's impulse means there is
+||                  hardly anything left to solve.
+||
+||                  A contact is found by the serial numbers of its two
+||                  objects, packed into one long (see key()). The map is an
+||                  open-addressing hash table with linear probing, held in
+||                  plain arrays, so looking up or adding a contact doesn't
+||                  create any garbage. Each entry is stamped with the step
+||                  it was last used in; entries that weren't used in a step
+||                  are dropped at the end of it.
+||
+||                  Entries are only added and dropped on one thread. While
+||                  the islands are solved in parallel, each contact only
+||                  reads and writes its own slot.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + ContactCache()
+||
+||  Class Methods:  + key(PhysicsObject, PhysicsObject) : long
+||
+||  Inst. Methods:  + beginStep() : void
+||                  + endStep() : void
+||                  + ensureCapacity(int) : void
+||                  + slotOf(long) : int
+||                  + size() : int
+||                  + clear() : void
+||                  + getNormalX(int) : double
+||                  + getNormalY(int) : double
+||                  + getNormalImpulse(int) : double
+||                  + getTangentImpulse(int) : double
+||                  + getPushImpulse(int) : double
+||                  + getEffectiveMass(int) : double
+||                  + set(int, double, double, double, double, double, double) : void
+||
+++-----------------------------------------------------------------------*/
+public class ContactCache {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * The table is grown when it is more than this full, which keeps the
+	 * probe sequences short.
+	 */
+	private static final double MAX_LOAD = 0.5;
+
+	// the entries. a slot is free when its stamp is 0.
+	private long[] keys;
+	private int[] stamps;
+	private double[] normalX, normalY;
+	private double[] normalImpulse, tangentImpulse;
+	private double[] pushImpulse;
+	private double[] effectiveMass;
+	private int size;
+
+	/**
+	 * The number of the current step. Starts at 1, since 0 marks a free
+	 * slot.
+	 */
+	private int stamp;
+
+	// spare arrays that endStep() copies the live entries into, so that
+	// dropping entries doesn't create garbage either
+	private long[] spareKeys;
+	private int[] spareStamps;
+	private double[] spareNormalX, spareNormalY;
+	private double[] spareNormalImpulse, spareTangentImpulse;
+	private double[] sparePushImpulse;
+	private double[] spareEffectiveMass;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new, empty ContactCache.
+	 */
+	public ContactCache() {
+		allocate(256);
+		stamp = 1;
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Gets the key of the contact between two objects. The order matters:
+	 * (a, b) and (b, a) are different contacts, since their normals point
+	 * in opposite directions.
+	 *
+	 * @param a
+	 *            the first object of the pair
+	 * @param b
+	 *            the second object of the pair
+	 * @return the key
+	 */
+	public static long key(PhysicsObject a, PhysicsObject b) {
+		return ((long) a.getSerialNum() << 32) | (b.getSerialNum() & 0xffffffffL);
+	}
+
+	/**
+	 * Starts a new step. Every entry that is not looked up with slotOf()
+	 * before endStep() is dropped.
+	 */
+	public void beginStep() {
+		stamp++;
+
+		// the stamp wrapped around; start over rather than mistake old
+		// entries for new ones
+		if (stamp == Integer.MAX_VALUE) {
+			clear();
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * Drops the entries that were not used in this step.
+	 */
+	public void endStep() {
+		if (size == 0)
+			return;
+
+		// swap in the spare arrays, then put the live entries back
+		long[] oldKeys = keys;
+		int[] oldStamps = stamps;
+		double[] oldNormalX = normalX;
+		double[] oldNormalY = normalY;
+		double[] oldNormalImpulse = normalImpulse;
+		double[] oldTangentImpulse = tangentImpulse;
+		double[] oldPushImpulse = pushImpulse;
+		double[] oldEffectiveMass = effectiveMass;
+
+		keys = spareKeys;
+		stamps = spareStamps;
+		normalX = spareNormalX;
+		normalY = spareNormalY;
+		normalImpulse = spareNormalImpulse;
+		tangentImpulse = spareTangentImpulse;
+		pushImpulse = sparePushImpulse;
+		effectiveMass = spareEffectiveMass;
+		size = 0;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldStamps[i] == stamp) {
+				int slot = insert(oldKeys[i]);
+				normalX[slot] = oldNormalX[i];
+				normalY[slot] = oldNormalY[i];
+				normalImpulse[slot] = oldNormalImpulse[i];
+				tangentImpulse[slot] = oldTangentImpulse[i];
+				pushImpulse[slot] = oldPushImpulse[i];
+				effectiveMass[slot] = oldEffectiveMass[i];
+			}
+
+			oldStamps[i] = 0;
+		}
+
+		spareKeys = oldKeys;
+		spareStamps = oldStamps;
+		spareNormalX = oldNormalX;
+		spareNormalY = oldNormalY;
+		spareNormalImpulse = oldNormalImpulse;
+		spareTangentImpulse = oldTangentImpulse;
+		sparePushImpulse = oldPushImpulse;
+		spareEffectiveMass = oldEffectiveMass;
+	}
+
+	/**
+	 * Makes sure the given number of entries can be added without the table
+	 * growing. Growing moves every entry, so this has to be called before
+	 * slots are handed out for a step.
+	 *
+	 * @param entries
+	 *            the number of entries that might be added
+	 */
+	public void ensureCapacity(int entries) {
+		while (size + entries > keys.length * MAX_LOAD)
+			grow();
+	}
+
+	/**
+	 * Finds the slot of a contact, adding it (with no normal and no impulses)
+	 * if it isn't there yet. The entry is kept for this step.
+	 *
+	 * @param key
+	 *            the key of the contact, from key()
+	 * @return the slot; only valid until the next endStep(), or until the
+	 *         table grows (see ensureCapacity())
+	 */
+	public int slotOf(long key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; stamps[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				stamps[i] = stamp;
+				return i;
+			}
+		}
+
+		if (size + 1 > keys.length * MAX_LOAD)
+			grow();
+
+		int slot = insert(key);
+		normalX[slot] = 0.0;
+		normalY[slot] = 0.0;
+		normalImpulse[slot] = 0.0;
+		tangentImpulse[slot] = 0.0;
+		pushImpulse[slot] = 0.0;
+		effectiveMass[slot] = 0.0;
+		return slot;
+	}
+
+	/**
+	 * Gets the number of contacts in the cache.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Forgets every contact.
+	 */
+	public void clear() {
+		for (int i = 0; i < stamps.length; i++)
+			stamps[i] = 0;
+
+		size = 0;
+	}
+
+	public double getNormalX(int slot) {
+		return normalX[slot];
+	}
+
+	public double getNormalY(int slot) {
+		return normalY[slot];
+	}
+
+	public double getNormalImpulse(int slot) {
+		return normalImpulse[slot];
+	}
+
+	public double getTangentImpulse(int slot) {
+		return tangentImpulse[slot];
+	}
+
+	public double getPushImpulse(int slot) {
+		return pushImpulse[slot];
+	}
+
+	public double getEffectiveMass(int slot) {
+		return effectiveMass[slot];
+	}
+
+	/**
+	 * Stores the outcome of a contact for the next step.
+	 *
+	 * @param slot
+	 *            the slot of the contact, from slotOf()
+	 * @param nx
+	 *            the x-component of the (unit) normal
+	 * @param ny
+	 *            the y-component of the normal
+	 * @param jn
+	 *            the total normal impulse
+	 * @param jt
+	 *            the total friction impulse
+	 * @param jp
+	 *            the total push impulse, kept apart from the normal impulse
+	 * @param mass
+	 *            the effective mass of the contact, which changes when one of
+	 *            the objects falls asleep or wakes up
+	 */
+	public void set(int slot, double nx, double ny, double jn, double jt, double jp, double mass) {
+		normalX[slot] = nx;
+		normalY[slot] = ny;
+		normalImpulse[slot] = jn;
+		tangentImpulse[slot] = jt;
+		pushImpulse[slot] = jp;
+		effectiveMass[slot] = mass;
+	}
+
+	/**
+	 * Puts a key into the first free slot of its probe sequence. The key
+	 * must not be in the table yet.
+	 */
+	private int insert(long key) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (stamps[i] != 0)
+			i = (i + 1) & mask;
+
+		keys[i] = key;
+		stamps[i] = stamp;
+		size++;
+		return i;
+	}
+
+	/**
+	 * Doubles the size of the table, keeping every entry.
+	 */
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldStamps = stamps;
+		double[] oldNormalX = normalX;
+		double[] oldNormalY = normalY;
+		double[] oldNormalImpulse = normalImpulse;
+		double[] oldTangentImpulse = tangentImpulse;
+		double[] oldPushImpulse = pushImpulse;
+		double[] oldEffectiveMass = effectiveMass;
+
+		allocate(oldKeys.length * 2);
+		size = 0;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldStamps[i] != 0) {
+				int slot = insert(oldKeys[i]);
+				stamps[slot] = oldStamps[i];
+				normalX[slot] = oldNormalX[i];
+				normalY[slot] = oldNormalY[i];
+				normalImpulse[slot] = oldNormalImpulse[i];
+				tangentImpulse[slot] = oldTangentImpulse[i];
+				pushImpulse[slot] = oldPushImpulse[i];
+				effectiveMass[slot] = oldEffectiveMass[i];
+			}
+		}
+	}
+
+	/**
+	 * Creates (empty) tables of the given size, which must be a power of 2.
+	 */
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		stamps = new int[capacity];
+		normalX = new double[capacity];
+		normalY = new double[capacity];
+		normalImpulse = new double[capacity];
+		tangentImpulse = new double[capacity];
+		pushImpulse = new double[capacity];
+		effectiveMass = new double[capacity];
+
+		spareKeys = new long[capacity];
+		spareStamps = new int[capacity];
+		spareNormalX = new double[capacity];
+		spareNormalY = new double[capacity];
+		spareNormalImpulse = new double[capacity];
+		spareTangentImpulse = new double[capacity];
+		sparePushImpulse = new double[capacity];
+		spareEffectiveMass = new double[capacity];
+	}
+
+	/**
+	 * Spreads the bits of a key over an int. Serial numbers are small and
+	 * close together, so they have to be mixed before they are masked.
+	 */
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
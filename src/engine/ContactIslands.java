@@ -0,0 +1,366 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+/*+----------------------------------------------------------------------
+||
+||  Class ContactIslands
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Sorts the contacts of a step into islands: groups of
+||                  moving objects that touch each other, directly or through
+||                  other moving objects. Two islands share no moving object,
+||                  so they can be solved at the same time without locking.
+||
+||                  The islands are found with a union-find over the moving
+||                  objects of each contact. Objects that never move (Walls,
+||                  Ramps) are never changed by a contact, so they don't join
+||                  islands together: two piles of balls resting on the same
+||                  floor are still two islands. Sleeping objects act like
+||                  static ones.
+||
+||                  Within an island, the contacts keep the order they were
+||                  added in, and the islands are numbered in the order their
+||                  first contact was added, so solving them gives the same
+||                  result as solving every contact one after the other.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + ContactIslands()
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + clear() : void
+||                  + addContact(int, double, double, PhysicsObject, PhysicsObject) : void
+||                  + build() : void
+||                  + getContactCount() : int
+||                  + getIslandCount() : int
+||                  + getBodyCount() : int
+||                  + getBodyIndex(PhysicsObject) : int
+||                  + getIsland(PhysicsObject) : int
+||                  + getIslandStart(int) : int
+||                  + getIslandEnd(int) : int
+||                  + getPair(int) : int
+||                  + getProjectionX(int) : double
+||                  + getProjectionY(int) : double
+||
+++-----------------------------------------------------------------------*/
+public class ContactIslands {
+
+	// attributes ///////////////////////////////////////////
+
+	// the moving objects seen since the last clear(), and the union-find
+	// forest over them. islandOf is the island of each root, or -1.
+	// writeSlot is used by build() to sort the contacts.
+	private PhysicsObject[] bodies;
+	private int[] parent;
+	private int[] islandOf;
+	private int[] writeSlot;
+	private int bodyCount;
+
+	// the contacts, in the order they were added. bodyA is the moving object
+	// of each contact.
+	private int[] pair;
+	private double[] projectionX, projectionY;
+	private int[] bodyA;
+	private int contactCount;
+
+	// the contacts again, sorted by island by build()
+	private int[] sortedPair;
+	private double[] sortedProjectionX, sortedProjectionY;
+
+	/**
+	 * Where the contacts of each island start in the sorted arrays. Island i
+	 * runs from islandStart[i] up to (not including) islandStart[i + 1].
+	 */
+	private int[] islandStart;
+	private int islandCount;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new, empty ContactIslands.
+	 */
+	public ContactIslands() {
+		bodies = new PhysicsObject[64];
+		parent = new int[64];
+		islandOf = new int[64];
+		writeSlot = new int[64];
+		bodyCount = 0;
+
+		pair = new int[64];
+		projectionX = new double[64];
+		projectionY = new double[64];
+		bodyA = new int[64];
+		sortedPair = new int[64];
+		sortedProjectionX = new double[64];
+		sortedProjectionY = new double[64];
+		contactCount = 0;
+
+		islandStart = new int[65];
+		islandCount = 0;
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Forgets all objects, contacts and islands.
+	 */
+	public void clear() {
+		for (int i = 0; i < bodyCount; i++)
+			bodies[i] = null;
+
+		bodyCount = 0;
+		contactCount = 0;
+		islandCount = 0;
+	}
+
+	/**
+	 * Adds a contact and joins the islands of its objects.
+	 *
+	 * @param pairIndex
+	 *            the index of the pair in the PairList
+	 * @param projX
+	 *            the x-component of the projection vector
+	 * @param projY
+	 *            the y-component of the projection vector
+	 * @param u
+	 *            the moving (Updateable) object of the pair
+	 * @param po
+	 *            the other object; only joins the island if it is Updateable
+	 *            and awake
+	 */
+	public void addContact(int pairIndex, double projX, double projY, PhysicsObject u, PhysicsObject po) {
+		if (contactCount == pair.length)
+			growContacts(contactCount * 2);
+
+		int a = indexOf(u);
+		if (po instanceof Updateable && !po.isAsleep())
+			union(a, indexOf(po));
+
+		pair[contactCount] = pairIndex;
+		projectionX[contactCount] = projX;
+		projectionY[contactCount] = projY;
+		bodyA[contactCount] = a;
+		contactCount++;
+	}
+
+	/**
+	 * Numbers the islands and sorts the contacts by island. Must be called
+	 * after the last contact is added and before the islands are read.
+	 */
+	public void build() {
+		for (int i = 0; i < bodyCount; i++)
+			islandOf[i] = -1;
+
+		// number the islands and count their contacts. islandStart[i + 1]
+		// holds the count of island i for now.
+		islandCount = 0;
+		for (int c = 0; c < contactCount; c++) {
+			int root = find(bodyA[c]);
+			if (islandOf[root] == -1) {
+				islandOf[root] = islandCount;
+				islandStart[islandCount + 1] = 0;
+				islandCount++;
+			}
+
+			islandStart[islandOf[root] + 1]++;
+		}
+
+		// turn the counts into starts
+		islandStart[0] = 0;
+		for (int i = 0; i < islandCount; i++)
+			islandStart[i + 1] += islandStart[i];
+
+		// put each contact in the next free slot of its island
+		for (int i = 0; i < bodyCount; i++) {
+			if (parent[i] == i && islandOf[i] != -1)
+				writeSlot[i] = islandStart[islandOf[i]];
+		}
+
+		for (int c = 0; c < contactCount; c++) {
+			int slot = writeSlot[find(bodyA[c])]++;
+			sortedPair[slot] = pair[c];
+			sortedProjectionX[slot] = projectionX[c];
+			sortedProjectionY[slot] = projectionY[c];
+		}
+	}
+
+	public int getContactCount() {
+		return contactCount;
+	}
+
+	public int getIslandCount() {
+		return islandCount;
+	}
+
+	/**
+	 * Gets the number of moving objects in a contact.
+	 */
+	public int getBodyCount() {
+		return bodyCount;
+	}
+
+	/**
+	 * Gets the number of a moving object, from zero up to getBodyCount().
+	 * Different objects have different numbers, so the number can be used
+	 * to keep something for each object in an array.
+	 *
+	 * @param po
+	 *            the object
+	 * @return the number, or -1 if the object was in no contact
+	 */
+	public int getBodyIndex(PhysicsObject po) {
+		int i = po.islandIndex;
+		if (i >= bodyCount || bodies[i] != po)
+			return -1;
+
+		return i;
+	}
+
+	/**
+	 * Gets the island a moving object ended up in. Only valid after build().
+	 *
+	 * @param po
+	 *            the object
+	 * @return the island, or -1 if the object was in no contact
+	 */
+	public int getIsland(PhysicsObject po) {
+		int i = po.islandIndex;
+		if (i >= bodyCount || bodies[i] != po)
+			return -1;
+
+		return islandOf[find(i)];
+	}
+
+	/**
+	 * Gets the (sorted) index of the first contact of an island.
+	 */
+	public int getIslandStart(int island) {
+		return islandStart[island];
+	}
+
+	/**
+	 * Gets the (sorted) index just past the last contact of an island.
+	 */
+	public int getIslandEnd(int island) {
+		return islandStart[island + 1];
+	}
+
+	/**
+	 * Gets the pair index of a contact, by its sorted index.
+	 */
+	public int getPair(int contact) {
+		return sortedPair[contact];
+	}
+
+	public double getProjectionX(int contact) {
+		return sortedProjectionX[contact];
+	}
+
+	public double getProjectionY(int contact) {
+		return sortedProjectionY[contact];
+	}
+
+	/**
+	 * Gets the index of a moving object, adding it if this is the first
+	 * contact it is in.
+	 */
+	private int indexOf(PhysicsObject po) {
+		int i = po.islandIndex;
+		if (i < bodyCount && bodies[i] == po)
+			return i;
+
+		if (bodyCount == bodies.length)
+			growBodies(bodyCount * 2);
+
+		i = bodyCount++;
+		bodies[i] = po;
+		parent[i] = i;
+		po.islandIndex = i;
+		return i;
+	}
+
+	/**
+	 * Finds the root of an object's tree, flattening the path on the way.
+	 */
+	private int find(int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+
+		return i;
+	}
+
+	private void union(int a, int b) {
+		int rootA = find(a);
+		int rootB = find(b);
+
+		// the smaller index becomes the root, so the result doesn't depend on
+		// the order of the unions
+		if (rootA < rootB)
+			parent[rootB] = rootA;
+		else if (rootB < rootA)
+			parent[rootA] = rootB;
+	}
+
+	private void growBodies(int capacity) {
+		PhysicsObject[] newBodies = new PhysicsObject[capacity];
+		System.arraycopy(bodies, 0, newBodies, 0, bodyCount);
+		bodies = newBodies;
+		parent = grow(parent, capacity, bodyCount);
+		islandOf = new int[capacity];
+		writeSlot = new int[capacity];
+	}
+
+	private void growContacts(int capacity) {
+		pair = grow(pair, capacity, contactCount);
+		bodyA = grow(bodyA, capacity, contactCount);
+		projectionX = grow(projectionX, capacity, contactCount);
+		projectionY = grow(projectionY, capacity, contactCount);
+		sortedPair = new int[capacity];
+		sortedProjectionX = new double[capacity];
+		sortedProjectionY = new double[capacity];
+		islandStart = new int[capacity + 1];
+	}
+
+	private static int[] grow(int[] old, int capacity, int count) {
+		int[] result = new int[capacity];
+		System.arraycopy(old, 0, result, 0, count);
+		return result;
+	}
+
+	private static double[] grow(double[] old, int capacity, int count) {
+		double[] result = new double[capacity];
+		System.arraycopy(old, 0, result, 0, count);
+		return result;
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+/*+----------------------------------------------------------------------
+||
+||  Class ContactList
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  A growable list of the contacts found by the detect
+||                  phase in Core. Each contact is the index of a pair in the
+||                  PairList and the projection vector that pushes the first
+||                  object of the pair out of the second. The vector is stored
+||                  as two doubles, so adding a contact doesn't create any
+||                  garbage once the arrays have grown.
+||
+||                  A ContactList is only ever filled by one thread at a
+||                  time, so it needs no locking.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + ContactList()
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + add(int, double, double) : void
+||                  + clear() : void
+||                  + size() : int
+||                  + getPair(int) : int
+||                  + getProjectionX(int) : double
+||                  + getProjectionY(int) : double
+||
+++-----------------------------------------------------------------------*/
+public class ContactList {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * The index of each contact's pair in the PairList.
+	 */
+	private int[] pair;
+	/**
+	 * The projection vector of each contact.
+	 */
+	private double[] projectionX, projectionY;
+	/**
+	 * The number of contacts in the list.
+	 */
+	private int size;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new, empty ContactList.
+	 */
+	public ContactList() {
+		pair = new int[16];
+		projectionX = new double[16];
+		projectionY = new double[16];
+		size = 0;
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Adds a contact to the end of the list.
+	 *
+	 * @param pairIndex
+	 *            the index of the colliding pair in the PairList
+	 * @param projX
+	 *            the x-component of the projection vector
+	 * @param projY
+	 *            the y-component of the projection vector
+	 */
+	public void add(int pairIndex, double projX, double projY) {
+		if (size == pair.length) {
+			int[] newPair = new int[size * 2];
+			double[] newProjectionX = new double[size * 2];
+			double[] newProjectionY = new double[size * 2];
+			System.arraycopy(pair, 0, newPair, 0, size);
+			System.arraycopy(projectionX, 0, newProjectionX, 0, size);
+			System.arraycopy(projectionY, 0, newProjectionY, 0, size);
+			pair = newPair;
+			projectionX = newProjectionX;
+			projectionY = newProjectionY;
+		}
+
+		pair[size] = pairIndex;
+		projectionX[size] = projX;
+		projectionY[size] = projY;
+		size++;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getPair(int i) {
+		return pair[i];
+	}
+
+	public double getProjectionX(int i) {
+		return projectionX[i];
+	}
+
+	public double getProjectionY(int i) {
+		return projectionY[i];
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+/*+----------------------------------------------------------------------
+||
+||  Interface ContactListener
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Is told about every pair of PhysicsObjects that Core
+||                  finds touching, as it finds them, so that whoever is
+||                  watching the world (a goal, say) doesn't have to look for
+||                  contacts again. A contact is reported once for each
+||                  substep it is found in, including the hits of fast parts
+||                  that are found by sweeping them. Pairs in which both
+||                  parts are asleep aren't checked, so they aren't reported.
+||
+||                  The listener is called on the thread that steps the
+||                  world, between the detect and solve phases, so it must
+||                  be quick and must not move anything.
+||
+|+-----------------------------------------------------------------------
+||
+||  Interface Methods:  + contact(PhysicsObject, PhysicsObject) : void
+||
+++-----------------------------------------------------------------------*/
+public interface ContactListener {
+
+	/**
+	 * Called for a pair of objects that are touching.
+	 *
+	 * @param a
+	 *            the first object; always an Updateable
+	 * @param b
+	 *            the second object
+	 */
+	public void contact(PhysicsObject a, PhysicsObject b);
+
+}
@@ -0,0 +1,617 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+/*+----------------------------------------------------------------------
+||
+||  Class ContactSolver
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Changes the velocities of touching objects so that they
+||                  stop moving into each other, using sequential impulses.
+||                  Every contact of an island is turned into a constraint
+||                  ("the objects may not approach each other along the
+||                  normal") and the constraints are solved one after the
+||                  other, several times over. Each pass makes the others a
+||                  little less wrong, so a pile of objects settles as a
+||                  whole instead of depending on which contact came first.
+||
+||                  Each contact keeps the total (accumulated) impulse it has
+||                  applied so far. The total is clamped, not the change in a
+||                  single pass: a contact may only push (the normal impulse
+||                  never goes below zero), and friction may never be more
+||                  than mu times the normal impulse. A pass can take back
+||                  part of what an earlier pass applied too much of.
+||
+||                  Objects that overlap are pushed apart a little each step
+||                  (Baumgarte stabilization), which takes the overlap away
+||                  over a few steps without making them bounce. The push is
+||                  solved apart from the real impulses, as a second "push
+||                  velocity" of each object that only moves it and is
+||                  thrown away afterwards (split impulses). So the push never
+||                  ends up in the velocity, where it would carry on after
+||                  the overlap is gone and pump energy into a pile. Without
+||                  warm starting the push is simply added to the speed the
+||                  objects leave at, as it always was.
+||
+||                  An object that doesn't move (or is asleep) has an inverse
+||                  mass of zero, so walls and moving parts are handled by
+||                  the same formulas; the wall just never changes.
+||
+||                  Each contact starts from the impulses it ended the last
+||                  step with (kept in a ContactCache), as long as its normal
+||                  hasn't turned much. Since those hold no push, they can be
+||                  used in full. The push impulse is remembered on its own
+||                  and starts the push velocities of a contact that still
+||                  overlaps. A resting pile needs about the same impulses
+||                  every step, so it is solved in a few passes, and an
+||                  island stops being gone over as soon as a pass hardly
+||                  changes anything.
+||
+||                  The contacts are kept in plain arrays indexed the same as
+||                  the sorted contacts of ContactIslands. An island only
+||                  touches its own range of the arrays and its own moving
+||                  objects (and their push velocities, kept by their number
+||                  in ContactIslands), so different islands can be solved
+||                  at the same time.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + ContactSolver()
+||
+||  Class Methods:  ~ getInverseMass(PhysicsObject) : double
+||                  ~ getRestitution(PhysicsObject, PhysicsObject) : double
+||                  ~ getFriction(PhysicsObject, PhysicsObject) : double
+||
+||  Inst. Methods:  + setWarmStarting(boolean) : void
+||                  + isWarmStarting() : boolean
+||                  + getWarmStartCount() : int
+||                  + getPassCount() : int
+||                  + begin(ContactIslands, PairList, double) : void
+||                  + end() : void
+||                  + solve(ContactIslands, PairList, int, int, int) : void
+||
+++-----------------------------------------------------------------------*/
+public class ContactSolver {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * How fast (m/s) two objects have to hit each other to bounce. Slower
+	 * contacts, like a part resting on the floor that gravity pulls in a
+	 * little every step, just stop instead of jittering.
+	 */
+	static final double RESTITUTION_SPEED = 0.5;
+	/**
+	 * How deep (m) two objects may overlap before they are pushed apart.
+	 * Letting resting objects overlap a little keeps their contacts from
+	 * being lost and found again every step.
+	 */
+	static final double SLOP = 0.005;
+	/**
+	 * The fraction of the overlap (beyond SLOP) that the solver tries to take
+	 * away in one step, by pushing the objects apart. Taking it all away at
+	 * once makes piles bounce.
+	 */
+	private static final double BAUMGARTE = 0.2;
+	/**
+	 * An island stops being solved once a whole pass changes no relative
+	 * velocity by more than this (m/s).
+	 */
+	private static final double VELOCITY_TOLERANCE = 0.001;
+	/**
+	 * The cosine of the largest angle a contact's normal may have turned
+	 * since the last step and still be warm started. A normal that turned
+	 * more belongs to a different contact (the objects slid around each
+	 * other), and last step's impulse would be wrong for it.
+	 */
+	private static final double WARM_START_COS = 0.95;
+
+	// the objects of each contact. a is the moving object.
+	private PhysicsObject[] bodyA, bodyB;
+
+	// the unit normal of each contact, pointing from b to a
+	private double[] normalX, normalY;
+
+	private double[] inverseMassA, inverseMassB;
+	/**
+	 * 1 / (inverseMassA + inverseMassB): the impulse that changes the
+	 * relative velocity by 1 m/s. The objects don't rotate, so this is the
+	 * same along the normal and along the tangent.
+	 */
+	private double[] effectiveMass;
+	private double[] friction;
+	/**
+	 * The relative speed along the normal that the contact aims for: the
+	 * bounce, or zero.
+	 */
+	private double[] targetSpeed;
+	/**
+	 * The relative push velocity along the normal that takes away part of
+	 * the overlap in this step.
+	 */
+	private double[] pushSpeed;
+
+	// the impulses applied so far in this step, and the push impulse
+	private double[] normalImpulse, tangentImpulse;
+	private double[] pushImpulse;
+
+	// the number of each contact's objects in ContactIslands, or -1 for one
+	// that doesn't move
+	private int[] bodyIndexA, bodyIndexB;
+	/**
+	 * The push velocity of each moving object, by its number in
+	 * ContactIslands. Zero outside of solve().
+	 */
+	private double[] pushVelocityX, pushVelocityY;
+	/**
+	 * Whether each contact is a bounce. The impulse of a bounce is not
+	 * needed again in the next step, so it isn't remembered.
+	 */
+	private boolean[] bouncing;
+
+	/**
+	 * The impulses of the last step, found by the serial numbers of the
+	 * objects of each contact.
+	 */
+	private final ContactCache cache;
+	/**
+	 * The slot of each contact in the cache.
+	 */
+	private int[] cacheSlot;
+	private boolean warmStarting;
+
+	// the length of the current and the last step
+	private double timeElapsed;
+	private double lastTimeElapsed;
+	/**
+	 * What the cached impulses are multiplied by before they are used, so a
+	 * shorter step starts from a smaller impulse.
+	 */
+	private double impulseScale;
+
+	// counted while solving, for Core's statistics
+	private int warmStartCount;
+	private int passCount;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new, empty ContactSolver.
+	 */
+	public ContactSolver() {
+		cache = new ContactCache();
+		warmStarting = true;
+		allocate(64);
+		pushVelocityX = new double[64];
+		pushVelocityY = new double[64];
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Sets whether contacts start from the impulses they ended the last step
+	 * with. Turning it off forgets every contact.
+	 *
+	 * @param warmStarting
+	 *            true to warm start (the default)
+	 */
+	public void setWarmStarting(boolean warmStarting) {
+		this.warmStarting = warmStarting;
+		if (!warmStarting)
+			cache.clear();
+	}
+
+	public boolean isWarmStarting() {
+		return warmStarting;
+	}
+
+	/**
+	 * Gets the number of contacts of the last step that were warm started.
+	 */
+	public int getWarmStartCount() {
+		return warmStartCount;
+	}
+
+	/**
+	 * Gets the number of passes made over the islands of the last step,
+	 * added up over all islands.
+	 */
+	public int getPassCount() {
+		return passCount;
+	}
+
+	/**
+	 * Gets ready to solve the contacts of a step: makes room for them and
+	 * finds each of them in the ContactCache. Must be called on one thread,
+	 * before any island is solved.
+	 *
+	 * @param islands
+	 *            the contacts of the step, sorted into islands
+	 * @param pairs
+	 *            the pairs the contacts refer to
+	 * @param timeElapsed
+	 *            the length of the step, in seconds
+	 */
+	public void begin(ContactIslands islands, PairList pairs, double timeElapsed) {
+		int contacts = islands.getContactCount();
+		if (bodyA.length < contacts)
+			allocate(Math.max(contacts, bodyA.length * 2));
+
+		int bodies = islands.getBodyCount();
+		if (pushVelocityX.length < bodies) {
+			pushVelocityX = new double[Math.max(bodies, pushVelocityX.length * 2)];
+			pushVelocityY = new double[pushVelocityX.length];
+		}
+
+		// the impulses that were needed last step scale with its length
+		impulseScale = lastTimeElapsed > 0.0 ? Math.min(timeElapsed / lastTimeElapsed, 1.0) : 1.0;
+		this.timeElapsed = timeElapsed;
+		lastTimeElapsed = timeElapsed;
+
+		warmStartCount = 0;
+		passCount = 0;
+
+		if (!warmStarting)
+			return;
+
+		cache.beginStep();
+		cache.ensureCapacity(contacts);
+		for (int k = 0; k < contacts; k++) {
+			int i = islands.getPair(k);
+			cacheSlot[k] = cache.slotOf(ContactCache.key(pairs.getFirst(i), pairs.getSecond(i)));
+		}
+	}
+
+	/**
+	 * Finishes a step: forgets the contacts that are gone. Must be called on
+	 * one thread, after every island is solved.
+	 */
+	public void end() {
+		if (warmStarting)
+			cache.endStep();
+	}
+
+	/**
+	 * Solves a range of islands. Each island is gone over up to
+	 * <code>iterations</code> times, but stops early once a pass hardly
+	 * changes any velocity. Then the objects are moved by their push
+	 * velocities.
+	 *
+	 * @param islands
+	 *            the contacts of the step, sorted into islands
+	 * @param pairs
+	 *            the pairs the contacts refer to
+	 * @param firstIsland
+	 *            the first island to solve
+	 * @param endIsland
+	 *            the island after the last one to solve
+	 * @param iterations
+	 *            the most times to go over the contacts of an island
+	 */
+	public void solve(ContactIslands islands, PairList pairs, int firstIsland, int endIsland, int iterations) {
+		int warmStarted = 0;
+		int passes = 0;
+
+		for (int island = firstIsland; island < endIsland; island++) {
+			int start = islands.getIslandStart(island);
+			int end = islands.getIslandEnd(island);
+
+			// every bounce is measured before any impulse is applied, or the
+			// warm start of one contact would look like a bounce to the next
+			// contact on the same object
+			for (int k = start; k < end; k++)
+				prepare(k, islands, pairs);
+			for (int k = start; k < end; k++) {
+				if (warmStarting && warmStart(k))
+					warmStarted++;
+			}
+
+			for (int n = 0; n < iterations; n++) {
+				double change = 0.0;
+				for (int k = start; k < end; k++)
+					change = Math.max(change, solveContact(k));
+
+				passes++;
+				if (change < VELOCITY_TOLERANCE)
+					break;
+			}
+
+			for (int k = start; k < end; k++) {
+				push(bodyA[k], bodyIndexA[k]);
+				push(bodyB[k], bodyIndexB[k]);
+			}
+
+			for (int k = start; k < end; k++) {
+				if (warmStarting && bouncing[k])
+					cache.set(cacheSlot[k], normalX[k], normalY[k], 0.0, 0.0, pushImpulse[k], effectiveMass[k]);
+				else if (warmStarting)
+					cache.set(cacheSlot[k], normalX[k], normalY[k], normalImpulse[k], tangentImpulse[k], pushImpulse[k], effectiveMass[k]);
+
+				bodyA[k] = null;
+				bodyB[k] = null;
+			}
+		}
+
+		synchronized (this) {
+			warmStartCount += warmStarted;
+			passCount += passes;
+		}
+	}
+
+	/**
+	 * Sets up a contact from the projection vector found by the narrowphase.
+	 */
+	private void prepare(int k, ContactIslands islands, PairList pairs) {
+		int i = islands.getPair(k);
+		PhysicsObject a = pairs.getFirst(i);
+		PhysicsObject b = pairs.getSecond(i);
+		bodyA[k] = a;
+		bodyB[k] = b;
+
+		double projX = islands.getProjectionX(k);
+		double projY = islands.getProjectionY(k);
+		double length = Math.sqrt(projX * projX + projY * projY);
+		double nx = length == 0.0 ? 0.0 : projX / length;
+		double ny = length == 0.0 ? 0.0 : projY / length;
+		normalX[k] = nx;
+		normalY[k] = ny;
+
+		inverseMassA[k] = getInverseMass(a);
+		inverseMassB[k] = getInverseMass(b);
+		bodyIndexA[k] = inverseMassA[k] == 0.0 ? -1 : islands.getBodyIndex(a);
+		bodyIndexB[k] = inverseMassB[k] == 0.0 ? -1 : islands.getBodyIndex(b);
+		double inverseMass = inverseMassA[k] + inverseMassB[k];
+		effectiveMass[k] = inverseMass == 0.0 || length == 0.0 ? 0.0 : 1.0 / inverseMass;
+		friction[k] = getFriction(a, b);
+
+		// bounce off at the speed the objects came in at, scaled by the
+		// restitution. only the speed from before the solver counts.
+		Vector v_a = a.getVelocity();
+		Vector v_b = b.getVelocity();
+		double speed = (v_a.getX() - v_b.getX()) * nx + (v_a.getY() - v_b.getY()) * ny;
+		double bounce = speed < -RESTITUTION_SPEED ? -speed * getRestitution(a, b) : 0.0;
+		// the overlap is pushed out with a push velocity of its own, so that
+		// it never ends up in the impulse that is warm started next step.
+		// without warm starting there is nothing to keep it out of, and it
+		// is added to the speed the objects leave at, as it always was.
+		double push = length > SLOP ? BAUMGARTE * (length - SLOP) / timeElapsed : 0.0;
+		if (warmStarting) {
+			targetSpeed[k] = bounce;
+			pushSpeed[k] = push;
+		} else {
+			targetSpeed[k] = Math.max(bounce, push);
+			pushSpeed[k] = 0.0;
+		}
+		bouncing[k] = bounce > 0.0;
+
+		normalImpulse[k] = 0.0;
+		tangentImpulse[k] = 0.0;
+		pushImpulse[k] = 0.0;
+	}
+
+	/**
+	 * Applies the impulses a contact ended the last step with, if its normal
+	 * hasn't turned much since then and its objects are the same as they
+	 * were (none of them fell asleep or woke up). Last step's push only
+	 * goes to a contact that still has to be pushed apart.
+	 *
+	 * @return true if the contact was warm started
+	 */
+	private boolean warmStart(int k) {
+		int slot = cacheSlot[k];
+		double nx = normalX[k];
+		double ny = normalY[k];
+		if (effectiveMass[k] == 0.0 || effectiveMass[k] != cache.getEffectiveMass(slot) || nx * cache.getNormalX(slot) + ny * cache.getNormalY(slot) < WARM_START_COS)
+			return false;
+
+		double jn = cache.getNormalImpulse(slot) * impulseScale;
+		double jt = cache.getTangentImpulse(slot) * impulseScale;
+		double jp = pushSpeed[k] == 0.0 ? 0.0 : cache.getPushImpulse(slot) * impulseScale;
+		normalImpulse[k] = jn;
+		tangentImpulse[k] = jt;
+		pushImpulse[k] = jp;
+
+		// the tangent is the right-hand normal (-ny, nx)
+		Vector v_a = bodyA[k].getVelocity();
+		Vector v_b = bodyB[k].getVelocity();
+		applyImpulse(v_a, v_b, inverseMassA[k], inverseMassB[k], jn * nx - jt * ny, jn * ny + jt * nx);
+		applyPush(k, jp);
+		return true;
+	}
+
+	/**
+	 * Applies one pass of a contact: friction first, then the normal
+	 * impulse, so that the normal constraint (the more important one) is
+	 * the one that holds at the end of the pass, and last the push.
+	 *
+	 * @return how much the relative velocity of the objects changed (m/s)
+	 */
+	private double solveContact(int k) {
+		double mass = effectiveMass[k];
+		if (mass == 0.0)
+			return 0.0;
+
+		Vector v_a = bodyA[k].getVelocity();
+		Vector v_b = bodyB[k].getVelocity();
+		double invA = inverseMassA[k];
+		double invB = inverseMassB[k];
+		double nx = normalX[k];
+		double ny = normalY[k];
+		// the right-hand normal of the collision axis
+		double tx = -ny;
+		double ty = nx;
+
+		// friction, limited by the normal impulse so far
+		double dvX = v_a.getX() - v_b.getX();
+		double dvY = v_a.getY() - v_b.getY();
+		double lambda = -mass * (dvX * tx + dvY * ty);
+		double maxFriction = friction[k] * normalImpulse[k];
+		double total = Math.max(-maxFriction, Math.min(tangentImpulse[k] + lambda, maxFriction));
+		lambda = total - tangentImpulse[k];
+		tangentImpulse[k] = total;
+		applyImpulse(v_a, v_b, invA, invB, lambda * tx, lambda * ty);
+		double change = Math.abs(lambda);
+
+		// the normal impulse may only push the objects apart
+		dvX = v_a.getX() - v_b.getX();
+		dvY = v_a.getY() - v_b.getY();
+		lambda = -mass * (dvX * nx + dvY * ny - targetSpeed[k]);
+		total = Math.max(normalImpulse[k] + lambda, 0.0);
+		lambda = total - normalImpulse[k];
+		normalImpulse[k] = total;
+		applyImpulse(v_a, v_b, invA, invB, lambda * nx, lambda * ny);
+		change = Math.max(change, Math.abs(lambda));
+
+		// the push, which like the normal impulse may only push
+		if (pushSpeed[k] == 0.0 && pushImpulse[k] == 0.0)
+			return change / mass;
+
+		int ia = bodyIndexA[k];
+		int ib = bodyIndexB[k];
+		double pushX = (ia < 0 ? 0.0 : pushVelocityX[ia]) - (ib < 0 ? 0.0 : pushVelocityX[ib]);
+		double pushY = (ia < 0 ? 0.0 : pushVelocityY[ia]) - (ib < 0 ? 0.0 : pushVelocityY[ib]);
+		lambda = -mass * (pushX * nx + pushY * ny - pushSpeed[k]);
+		total = Math.max(pushImpulse[k] + lambda, 0.0);
+		lambda = total - pushImpulse[k];
+		pushImpulse[k] = total;
+		applyPush(k, lambda);
+
+		return Math.max(change, Math.abs(lambda)) / mass;
+	}
+
+	/**
+	 * Adds a push impulse along the normal of a contact to the push velocity
+	 * of a and takes it from b.
+	 */
+	private void applyPush(int k, double lambda) {
+		int ia = bodyIndexA[k];
+		int ib = bodyIndexB[k];
+		if (ia >= 0) {
+			pushVelocityX[ia] += lambda * normalX[k] * inverseMassA[k];
+			pushVelocityY[ia] += lambda * normalY[k] * inverseMassA[k];
+		}
+		if (ib >= 0) {
+			pushVelocityX[ib] -= lambda * normalX[k] * inverseMassB[k];
+			pushVelocityY[ib] -= lambda * normalY[k] * inverseMassB[k];
+		}
+	}
+
+	/**
+	 * Moves an object by its push velocity for the length of the step, and
+	 * sets the push velocity back to zero (so an object in several contacts
+	 * is only moved once).
+	 *
+	 * @param po
+	 *            the object
+	 * @param index
+	 *            its number in ContactIslands, or -1 if it doesn't move
+	 */
+	private void push(PhysicsObject po, int index) {
+		if (index < 0 || (pushVelocityX[index] == 0.0 && pushVelocityY[index] == 0.0))
+			return;
+
+		Vector position = po.getPosition();
+		position.set(position.getX() + pushVelocityX[index] * timeElapsed, position.getY() + pushVelocityY[index] * timeElapsed);
+		po.updateBounds();
+
+		pushVelocityX[index] = 0.0;
+		pushVelocityY[index] = 0.0;
+	}
+
+	/**
+	 * Adds an impulse to a and takes it from b. An object with an inverse
+	 * mass of zero is not written to at all, since it may be shared with an
+	 * island that is being solved on another thread.
+	 */
+	private static void applyImpulse(Vector v_a, Vector v_b, double invA, double invB, double px, double py) {
+		if (invA != 0.0)
+			v_a.set(v_a.getX() + px * invA, v_a.getY() + py * invA);
+		if (invB != 0.0)
+			v_b.set(v_b.getX() - px * invB, v_b.getY() - py * invB);
+	}
+
+	/**
+	 * Gets 1 / mass of an object, or zero if it doesn't move (it isn't
+	 * Updateable or it is asleep).
+	 */
+	static double getInverseMass(PhysicsObject po) {
+		if (!(po instanceof Updateable) || po.isAsleep())
+			return 0.0;
+
+		return 1.0 / po.getMass();
+	}
+
+	/**
+	 * Gets the coefficient of restitution of a contact: the bounciest of the
+	 * moving objects. There is no restitution field yet, so mu_k stands in
+	 * for it (as it always has). The numbers of the walls were picked as
+	 * friction, not as bounce, so they are left out.
+	 */
+	static double getRestitution(PhysicsObject a, PhysicsObject b) {
+		double restitution = a instanceof Updateable ? a.getMUk() : 0.0;
+		if (b instanceof Updateable)
+			restitution = Math.max(restitution, b.getMUk());
+
+		return restitution;
+	}
+
+	/**
+	 * Gets the coefficient of friction of a contact, the geometric mean of
+	 * mu_s of both objects.
+	 */
+	static double getFriction(PhysicsObject a, PhysicsObject b) {
+		return Math.sqrt(a.getMUs() * b.getMUs());
+	}
+
+	/**
+	 * Grows the arrays. Nothing in them is kept, they are only used during
+	 * one step.
+	 */
+	private void allocate(int capacity) {
+		bodyA = new PhysicsObject[capacity];
+		bodyB = new PhysicsObject[capacity];
+		normalX = new double[capacity];
+		normalY = new double[capacity];
+		inverseMassA = new double[capacity];
+		inverseMassB = new double[capacity];
+		effectiveMass = new double[capacity];
+		friction = new double[capacity];
+		targetSpeed = new double[capacity];
+		pushSpeed = new double[capacity];
+		normalImpulse = new double[capacity];
+		tangentImpulse = new double[capacity];
+		pushImpulse = new double[capacity];
+		bodyIndexA = new int[capacity];
+		bodyIndexB = new int[capacity];
+		cacheSlot = new int[capacity];
+		bouncing = new boolean[capacity];
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+/*+----------------------------------------------------------------------
+||
+||  Class ContinuousCollisions
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Continuous collision detection (CCD) for fast round
+||                  parts. Collisions only looks at where the parts are at
+||                  the end of a step, so a ball that moves further than its
+||                  own size in one step can jump right over a thin wall.
+||                  This class instead sweeps the circle along the line it
+||                  moved on and finds the time of impact: the first moment
+||                  during the step at which it touches the polygon.
+||
+||                  Sweeping a circle against a polygon is the same as
+||                  casting a ray (the path of the center) against the
+||                  polygon grown by the radius. The grown polygon has the
+||                  edges pushed out by the radius, with a circle of the same
+||                  radius around each corner, so the ray is tested against
+||                  each pushed out edge and each corner circle.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  N/A
+||
+||  Class Methods:  + sweepCircle(double, double, double, double, double, double[], double[]) : double
+||
+||  Inst. Methods:  N/A
+||
+++-----------------------------------------------------------------------*/
+public class ContinuousCollisions {
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Finds when a moving circle first touches a polygon.
+	 * 
+	 * @param x
+	 *            the x-coordinate of the center of the circle at the start of
+	 *            the step
+	 * @param y
+	 *            the y-coordinate of the center at the start of the step
+	 * @param dx
+	 *            how far the center moves along x during the step
+	 * @param dy
+	 *            how far the center moves along y during the step
+	 * @param radius
+	 *            the radius of the circle
+	 * @param vertices
+	 *            the corners of the polygon, as x0, y0, x1, y1, etc.
+	 * @param normal
+	 *            where the unit normal of the surface that was hit is put,
+	 *            pointing out of the polygon (towards the circle)
+	 * @return the time of impact as a fraction of the step (0 to 1), or -1
+	 *         if the circle doesn't hit the polygon during the step or is
+	 *         already touching it at the start
+	 */
+	public static double sweepCircle(double x, double y, double dx, double dy, double radius, double[] vertices, double[] normal) {
+		int n = vertices.length / 2;
+
+		// the middle of the polygon, to tell which way the edges face
+		double centerX = 0.0;
+		double centerY = 0.0;
+		for (int i = 0; i < n; i++) {
+			centerX += vertices[i * 2];
+			centerY += vertices[i * 2 + 1];
+		}
+		centerX /= n;
+		centerY /= n;
+
+		double best = Double.MAX_VALUE;
+		boolean inside = true;
+
+		// the pushed out edges
+		for (int i = 0; i < n; i++) {
+			int next = (i + 1) % n;
+			double ax = vertices[i * 2];
+			double ay = vertices[i * 2 + 1];
+			double edgeX = vertices[next * 2] - ax;
+			double edgeY = vertices[next * 2 + 1] - ay;
+			double edgeLengthSquared = edgeX * edgeX + edgeY * edgeY;
+			if (edgeLengthSquared == 0.0)
+				continue;
+
+			// the edge's normal, turned to face out of the polygon
+			double length = Math.sqrt(edgeLengthSquared);
+			double nx = edgeY * -1 / length;
+			double ny = edgeX / length;
+			if (nx * (ax - centerX) + ny * (ay - centerY) < 0) {
+				nx *= -1;
+				ny *= -1;
+			}
+
+			// how far the circle is in front of the edge
+			double distance = nx * (x - ax) + ny * (y - ay) - radius;
+			if (distance > 0)
+				inside = false;
+
+			double approach = nx * dx + ny * dy;
+			if (distance < 0 || approach >= 0)
+				// behind the edge, or moving away from it
+				continue;
+
+			double t = distance / -approach;
+			if (t > 1.0 || t >= best)
+				continue;
+
+			// the point of the circle that touches the edge's line must be on
+			// the edge itself, otherwise a corner is hit (or nothing)
+			double touchX = x + dx * t - nx * radius;
+			double touchY = y + dy * t - ny * radius;
+			double s = ((touchX - ax) * edgeX + (touchY - ay) * edgeY) / edgeLengthSquared;
+			if (s < 0.0 || s > 1.0)
+				continue;
+
+			best = t;
+			normal[0] = nx;
+			normal[1] = ny;
+		}
+
+		// already touching; Collisions will take care of it
+		if (inside)
+			return -1.0;
+
+		// the corner circles: solve |start + t * d - corner| = radius for t
+		double a = dx * dx + dy * dy;
+		if (a == 0.0)
+			return best <= 1.0 ? best : -1.0;
+
+		for (int i = 0; i < n; i++) {
+			double fx = x - vertices[i * 2];
+			double fy = y - vertices[i * 2 + 1];
+			double b = 2.0 * (fx * dx + fy * dy);
+			double c = fx * fx + fy * fy - radius * radius;
+
+			if (c < 0.0 || b >= 0.0)
+				// already around the corner, or moving away from it
+				continue;
+
+			double discriminant = b * b - 4.0 * a * c;
+			if (discriminant < 0.0)
+				continue;
+
+			double t = (-b - Math.sqrt(discriminant)) / (2.0 * a);
+			if (t < 0.0 || t > 1.0 || t >= best)
+				continue;
+
+			best = t;
+			normal[0] = (fx + dx * t) / radius;
+			normal[1] = (fy + dy * t) / radius;
+		}
+
+		return best <= 1.0 ? best : -1.0;
+	}
+
+}
@@ -19,40 +19,202 @@
 package engine;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /*+----------------------------------------------------------------------
 ||
-||  Class 
+||  Class Core
 ||
-||         Author:  
+||         Author:  Mark Ross
 ||
-||        Purpose:  
+||        Purpose:  Runs one step of the simulation: moves the Updateable
+||                  parts, asks the Broadphase (and the AABBTree of static
+||                  parts, if there is one) which parts might be touching and
+||                  then lets Collisions check and resolve each pair.
 ||
-||  Inherits From:  
+||                  Checking the pairs is split into two phases. The detect
+||                  phase only reads the world, so the pairs are cut into
+||                  chunks that are checked in parallel on a ForkJoinPool.
+||                  Each chunk writes the contacts it finds into its own
+||                  ContactList, using a CollisionContext of its own. The
+||                  resolve phase then sorts the contacts into
+||                  ContactIslands (groups of moving parts that touch each
+||                  other) and solves the islands in parallel on the same
+||                  pool. Within an island the contacts are solved in the
+||                  order of their pairs, and islands share no moving parts,
+||                  so the outcome of a step doesn't depend on the number of
+||                  threads or on how the work was scheduled.
 ||
-||     Interfaces:  
+||                  An island is solved by pushing its parts apart and then
+||                  running a ContactSolver over all of its contacts at once,
+||                  so a pile doesn't depend on which of its contacts was
+||                  found first.
+||
+||                  A step is cut into substeps when the fastest moving part
+||                  would otherwise travel too far compared to the smallest
+||                  part in the world (and so could pass right through it).
+||                  Slow worlds still take one step per call.
+||
+||                  A round part that moves a good part of its radius in one
+||                  step is also swept against the static parts along the
+||                  path it took (see ContinuousCollisions). If it hit one,
+||                  it is put back to where it hit and bounced off.
+||
+||                  An Updateable that stays (nearly) still for SLEEP_STEPS
+||                  steps falls asleep. Sleeping parts are not moved, don't
+||                  query the tree of static parts and act like static parts
+||                  in collisions. A moving part whose bounding box touches a
+||                  sleeping one wakes it up, and so does placing a part next
+||                  to it (see wakeNear()).
+||
+||                  Core itself keeps nothing between calls. Everything that
+||                  belongs to a world (its settings, the caches that carry
+||                  over from step to step and the numbers about the last
+||                  step) is in the CoreContext it is passed, so worlds with
+||                  different contexts can be stepped at the same time.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
 ||
 |+-----------------------------------------------------------------------
 ||
-||      Constants:  
+||      Constants:  None
 ||
 |+-----------------------------------------------------------------------
 ||
-||   Constructors:  
+||   Constructors:  N/A
 ||
-||  Class Methods:  
+||  Class Methods:  + wakeNear(List<? extends PhysicsObject>, PhysicsObject) : void
+||                  + updatePhysicsObjects(CoreContext, List<? extends PhysicsObject>, List<Updateable>, double, Vector) : void
+||                  + updatePhysicsObjects(CoreContext, List<? extends PhysicsObject>, List<Updateable>, AABBTree, double, Vector) : void
+||                  + updatePhysicsObjects(CoreContext, BodyStore, List<? extends PhysicsObject>, List<Updateable>, AABBTree, double, Vector) : void
 ||
-||  Inst. Methods:  
+||  Inst. Methods:  N/A
 ||
 ++-----------------------------------------------------------------------*/
 public class Core {
 
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * How far a part may move in one substep, as a fraction of the size of
+	 * the smallest part in the world.
+	 */
+	private static final double MAX_TRAVEL = 0.5;
+
+	/**
+	 * The most substeps a step is cut into. Keeps a part that is flung
+	 * impossibly fast from stalling the world.
+	 */
+	private static final int MAX_SUBSTEPS = 8;
+
+	/**
+	 * How far a round part has to move in one step, as a fraction of its
+	 * radius, before it is swept against the static parts.
+	 */
+	private static final double CCD_THRESHOLD = 0.5;
+
+	/**
+	 * How far (m) a swept part is kept away from the surface it hit, so that
+	 * Collisions doesn't bounce it a second time.
+	 */
+	private static final double CCD_GAP = 0.0001;
+
+	/**
+	 * How fast (m/s) a part may move and still count as resting. This is the
+	 * speed it really moved at in the last step, not its velocity: a part
+	 * wedged between two others can keep a velocity that is cancelled by
+	 * being pushed back out every step.
+	 */
+	private static final double SLEEP_SPEED = 0.1;
+
+	/**
+	 * How far (m) a part may drift from where it came to rest and still
+	 * count as resting. Catches parts that roll or slide slowly.
+	 */
+	private static final double SLEEP_DISTANCE = 0.01;
+
+	/**
+	 * How many steps in a row a part has to rest before it falls asleep.
+	 */
+	private static final int SLEEP_STEPS = 50;
+
+	/**
+	 * How many steps a part that was woken by a touch has to rest before it
+	 * falls asleep again. Shorter than SLEEP_STEPS, since it was resting
+	 * already, but long enough for it to start falling if what held it up has
+	 * moved away.
+	 */
+	private static final int WAKE_STEPS = 10;
+
+	/**
+	 * How close (m) to a newly placed part a sleeping part has to be to be
+	 * woken up by it.
+	 */
+	private static final double WAKE_DISTANCE = 0.5;
+
+	/**
+	 * The number of pairs in one chunk of the detect phase. Each chunk is
+	 * checked by one task and has its own ContactList.
+	 */
+	private static final int CHUNK_SIZE = 256;
+
+	/**
+	 * Below this many pairs, the detect phase runs on the calling thread;
+	 * handing out the work would cost more than it saves.
+	 */
+	private static final int PARALLEL_THRESHOLD = 2048;
+
+	/**
+	 * The most contacts one island task solves before it splits its islands
+	 * with another task, and the fewest contacts for which the islands are
+	 * solved in parallel at all.
+	 */
+	private static final int ISLAND_BATCH_SIZE = 256;
+
+	/**
+	 * How deep (m) two parts may overlap before they are pushed apart
+	 * directly. Shallower overlaps are left to the ContactSolver, which takes
+	 * them away over a few steps; pushing resting parts around directly
+	 * fights the impulses the solver remembers and makes piles jitter.
+	 */
+	private static final double MAX_OVERLAP = 0.02;
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Wakes up every sleeping part close to the given one. Must be called
+	 * when a part is placed into (or taken out of) the world, since the
+	 * sleeping parts around it might not be resting anymore.
+	 * 
+	 * @param parts
+	 *            the parts in the world
+	 * @param po
+	 *            the part that was placed
+	 */
+	public static void wakeNear(List<? extends PhysicsObject> parts, PhysicsObject po) {
+		double minX = po.getMinX() - WAKE_DISTANCE;
+		double minY = po.getMinY() - WAKE_DISTANCE;
+		double maxX = po.getMaxX() + WAKE_DISTANCE;
+		double maxY = po.getMaxY() + WAKE_DISTANCE;
+
+		for (PhysicsObject other : parts) {
+			if (other.isAsleep() && other.getMinX() <= maxX && minX <= other.getMaxX() && other.getMinY() <= maxY && minY <= other.getMaxY())
+				other.wakeUp();
+		}
+	}
+
 	/**
 	 * Updates the Updateable parts in the given list of Parts and checks for
 	 * collisions. If there is a collision, performs calculations. If one of the
 	 * parts performs some special function upon collision (i.e. it implements
 	 * Interactable), do the action
 	 * 
+	 * @param c
+	 *            the context of the world
 	 * @param parts
 	 *            the entire list of parts in the world. This is needed in order
 	 *            to check for collisions.
@@ -61,33 +223,682 @@ public class Core {
 	 * @param timeElapsed
 	 *            used as a scale factor in calculations
 	 */
-	public static void updatePhysicsObjects(List<? extends PhysicsObject> parts, List<Updateable> partsToUpdate, double timeElapsed, Vector gravity) {
+	public static void updatePhysicsObjects(CoreContext c, List<? extends PhysicsObject> parts, List<Updateable> partsToUpdate, double timeElapsed, Vector gravity) {
+		updatePhysicsObjects(c, parts, partsToUpdate, null, timeElapsed, gravity);
+	}
+
+	/**
+	 * Same as updatePhysicsObjects(CoreContext, List, List, double, Vector),
+	 * except that the parts that never move are kept in an AABBTree. Each
+	 * Updateable queries the tree instead of being paired with every static
+	 * part by the Broadphase.
+	 * 
+	 * @param c
+	 *            the context of the world
+	 * @param parts
+	 *            the parts in the world that are <b>not</b> in
+	 *            <code>staticParts</code>
+	 * @param partsToUpdate
+	 *            the list of Updateable parts
+	 * @param staticParts
+	 *            the parts that never move, or <code>null</code> if they are
+	 *            all in <code>parts</code>
+	 * @param timeElapsed
+	 *            used as a scale factor in calculations
+	 */
+	public static void updatePhysicsObjects(CoreContext c, List<? extends PhysicsObject> parts, List<Updateable> partsToUpdate, AABBTree staticParts, double timeElapsed, Vector gravity) {
+		updatePhysicsObjects(c, null, parts, partsToUpdate, staticParts, timeElapsed, gravity);
+	}
+
+	/**
+	 * Same as updatePhysicsObjects(CoreContext, List, List, AABBTree, double,
+	 * Vector), except that the state of the parts lives in a BodyStore. The
+	 * parts in the store are integrated all at once on the store's arrays
+	 * instead of one at a time through Updateable.update().
+	 * 
+	 * @param c
+	 *            the context of the world
+	 * @param bodies
+	 *            the store holding the parts, or <code>null</code>
+	 * @param parts
+	 *            the parts in the world that are <b>not</b> in
+	 *            <code>staticParts</code>
+	 * @param partsToUpdate
+	 *            the list of Updateable parts
+	 * @param staticParts
+	 *            the parts that never move, or <code>null</code> if they are
+	 *            all in <code>parts</code>
+	 * @param timeElapsed
+	 *            used as a scale factor in calculations
+	 */
+	public static void updatePhysicsObjects(CoreContext c, BodyStore bodies, List<? extends PhysicsObject> parts, List<Updateable> partsToUpdate, AABBTree staticParts, double timeElapsed, Vector gravity) {
 		//TODO change names of parts and partsToUpdate
-		
+		long startTime = System.nanoTime();
+
+		int substeps = c.adaptiveSubstepping ? countSubsteps(parts, partsToUpdate, staticParts, timeElapsed) : 1;
+		for (int i = 0; i < substeps; i++)
+			step(c, bodies, parts, partsToUpdate, staticParts, timeElapsed / substeps, gravity);
+
+		c.lastSubstepCount = substeps;
+		c.lastStepTime = System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Works out how many substeps a step has to be cut into so that no part
+	 * moves further than MAX_TRAVEL times the size of the smallest part. The
+	 * speeds are the ones at the start of the step.
+	 */
+	private static int countSubsteps(List<? extends PhysicsObject> parts, List<Updateable> partsToUpdate, AABBTree staticParts, double timeElapsed) {
+		double maxSpeedSquared = 0.0;
+		for (Updateable u : partsToUpdate) {
+			PhysicsObject po = (PhysicsObject) u;
+			if (!po.isAsleep()) {
+				Vector v = po.getVelocity();
+				maxSpeedSquared = Math.max(maxSpeedSquared, v.getX() * v.getX() + v.getY() * v.getY());
+			}
+		}
+
+		if (maxSpeedSquared == 0.0)
+			return 1;
+
+		double smallestSize = staticParts != null ? staticParts.getSmallestSize() : Double.MAX_VALUE;
+		for (PhysicsObject po : parts)
+			smallestSize = Math.min(smallestSize, Math.min(po.getMaxX() - po.getMinX(), po.getMaxY() - po.getMinY()));
+
+		double travel = Math.sqrt(maxSpeedSquared) * timeElapsed;
+		double allowed = MAX_TRAVEL * smallestSize;
+		if (travel <= allowed)
+			return 1;
+
+		return (int) Math.min(MAX_SUBSTEPS, Math.ceil(travel / allowed));
+	}
+
+	/**
+	 * Runs one (sub)step of the simulation. See
+	 * updatePhysicsObjects(CoreContext, BodyStore, List, List, AABBTree,
+	 * double, Vector).
+	 */
+	private static void step(CoreContext c, BodyStore bodies, List<? extends PhysicsObject> parts, List<Updateable> partsToUpdate, AABBTree staticParts, double timeElapsed, Vector gravity) {
+		findFastCircles(c, partsToUpdate, timeElapsed);
+
 		// update the Updateable parts
+		if (bodies != null)
+			bodies.integrate(timeElapsed, gravity);
+
+		for (Updateable u : partsToUpdate) {
+			PhysicsObject po = (PhysicsObject) u;
+			if (po.isAsleep())
+				continue;
+
+			// the ones in the store were just integrated
+			if (bodies == null || po.getBodyStore() != bodies)
+				u.update(timeElapsed, gravity);
+
+			po.updateBounds();
+		}
+
+		sweepFastCircles(c, parts, staticParts);
+
+		// find the pairs that might be colliding
+		c.pairs.clear();
+		c.broadphase.findPairs(parts, c.pairs);
+
+		if (staticParts != null) {
+			for (Updateable u : partsToUpdate) {
+				PhysicsObject po = (PhysicsObject) u;
+				if (!po.isAsleep())
+					staticParts.query(po, po.getMinX(), po.getMinY(), po.getMaxX(), po.getMaxY(), c.pairs);
+			}
+		}
+
+		// check for collisions, then respond to them
+		wakeTouched(c);
+		detect(c);
+		resolve(c, timeElapsed);
+
+		updateSleep(c, partsToUpdate, timeElapsed);
+
+		c.lastPairCount = c.pairs.size();
+	}
+
+	/**
+	 * Finds the round parts that will move far enough in this step to need
+	 * sweeping, and remembers where their centers start.
+	 */
+	private static void findFastCircles(CoreContext c, List<Updateable> partsToUpdate, double timeElapsed) {
+		c.sweptCount = 0;
+
 		for (Updateable u : partsToUpdate) {
-			u.update(timeElapsed, gravity);
+			PhysicsObject po = (PhysicsObject) u;
+			if (po.isAsleep() || po.getCollisionBoundType() != CollisionBoundType.ELLIPSE)
+				continue;
+
+			double travel = po.getVelocity().getMagnitude() * timeElapsed;
+			if (travel <= CCD_THRESHOLD * po.getWidth() / 2)
+				continue;
+
+			if (c.sweptCount == c.sweptParts.length) {
+				PhysicsObject[] newParts = new PhysicsObject[c.sweptCount * 2];
+				double[] newStartX = new double[c.sweptCount * 2];
+				double[] newStartY = new double[c.sweptCount * 2];
+				System.arraycopy(c.sweptParts, 0, newParts, 0, c.sweptCount);
+				System.arraycopy(c.sweptStartX, 0, newStartX, 0, c.sweptCount);
+				System.arraycopy(c.sweptStartY, 0, newStartY, 0, c.sweptCount);
+				c.sweptParts = newParts;
+				c.sweptStartX = newStartX;
+				c.sweptStartY = newStartY;
+			}
+
+			po.getCenter(c.sweptCenter);
+			c.sweptParts[c.sweptCount] = po;
+			c.sweptStartX[c.sweptCount] = c.sweptCenter.getX();
+			c.sweptStartY[c.sweptCount] = c.sweptCenter.getY();
+			c.sweptCount++;
+		}
+	}
+
+	/**
+	 * Sweeps each part found by findFastCircles() from where it started to
+	 * where it is now, against the RECTANGLE and POLYGON parts that don't
+	 * move. A part that hit one is moved back to the time of impact and
+	 * bounced off; the rest of its motion in this step is dropped.
+	 */
+	private static void sweepFastCircles(CoreContext c, List<? extends PhysicsObject> parts, AABBTree staticParts) {
+		for (int k = 0; k < c.sweptCount; k++) {
+			PhysicsObject po = c.sweptParts[k];
+			c.sweptParts[k] = null;
+
+			po.getCenter(c.sweptCenter);
+			double dx = c.sweptCenter.getX() - c.sweptStartX[k];
+			double dy = c.sweptCenter.getY() - c.sweptStartY[k];
+
+			// the box around the whole path
+			double minX = Math.min(po.getMinX(), po.getMinX() - dx);
+			double minY = Math.min(po.getMinY(), po.getMinY() - dy);
+			double maxX = Math.max(po.getMaxX(), po.getMaxX() - dx);
+			double maxY = Math.max(po.getMaxY(), po.getMaxY() - dy);
+
+			c.sweptPairs.clear();
+			if (staticParts != null) {
+				staticParts.query(po, minX, minY, maxX, maxY, c.sweptPairs);
+			}
+			else {
+				for (PhysicsObject other : parts) {
+					if (!(other instanceof Updateable) && other.getMinX() <= maxX && minX <= other.getMaxX() && other.getMinY() <= maxY && minY <= other.getMaxY())
+						c.sweptPairs.add(po, other);
+				}
+			}
+
+			// find the first hit
+			double radius = po.getWidth() / 2;
+			double firstTime = 2.0;
+			double normalX = 0.0;
+			double normalY = 0.0;
+			PhysicsObject firstHit = null;
 
-			// check for collisions
-			for (PhysicsObject po : parts) {
-				// don't check a part with itself!
- 				if (!u.equals(po)) { 
-					CollisionResult collResult = Collisions.checkForCollision((PhysicsObject) u, po);
+			for (int i = 0; i < c.sweptPairs.size(); i++) {
+				PhysicsObject other = c.sweptPairs.getSecond(i);
+				if (other.getCollisionBoundType() != CollisionBoundType.RECTANGLE && other.getCollisionBoundType() != CollisionBoundType.POLYGON)
+					continue;
+
+				double t = ContinuousCollisions.sweepCircle(c.sweptStartX[k], c.sweptStartY[k], dx, dy, radius, other.getVertices(), c.sweptNormal);
+				if (t >= 0.0 && t < firstTime) {
+					firstTime = t;
+					normalX = c.sweptNormal[0];
+					normalY = c.sweptNormal[1];
+					firstHit = other;
+				}
+			}
+
+			if (firstHit == null)
+				continue;
+
+			// move back to where it hit, just off the surface
+			po.getPosition().addXComp(dx * (firstTime - 1.0) + normalX * CCD_GAP);
+			po.getPosition().addYComp(dy * (firstTime - 1.0) + normalY * CCD_GAP);
+			po.updateBounds();
+
+			Collisions.collide(po, firstHit, normalX, normalY);
+
+			if (c.contactListener != null)
+				c.contactListener.contact(po, firstHit);
+		}
+	}
 
-					if (collResult.getCollisionOccurred() == true) {
-						// move the part so that it is no longer colliding
-						((PhysicsObject) u).getPosition().add(collResult.getProjectionVector());
+	/**
+	 * Goes through the candidate pairs and wakes every sleeping part that
+	 * the bounding box of a moving part touches. A pair of a sleeping part
+	 * and an awake part that is resting itself is turned around, so that
+	 * the awake part comes first and the sleeping part acts like a static
+	 * one.
+	 */
+	private static void wakeTouched(CoreContext c) {
+		for (int i = 0; i < c.pairs.size(); i++) {
+			PhysicsObject first = c.pairs.getFirst(i);
+			PhysicsObject second = c.pairs.getSecond(i);
 
-						// perform physics calculations
-						Collisions.collide((PhysicsObject) u, po, collResult);
+			// only parts whose boxes touch can wake each other
+			if (!first.isAsleep() && !second.isAsleep())
+				continue;
+			if (!first.boundsOverlap(second))
+				continue;
 
-						// make the parts interact if needed
-						//if (parts.get(j) instanceof Interactable)
-						//	((Interactable) parts.get(j)).interact((Part) partsToUpdate.get(i));
-					}
+			if (first.isAsleep()) {
+				if (second instanceof Updateable && !second.isAsleep()) {
+					if (isMoving(second))
+						wakeByTouch(first);
+					else
+						c.pairs.swap(i);
 				}
 			}
+			else if (second.isAsleep() && isMoving(first)) {
+				wakeByTouch(second);
+			}
+		}
+	}
+
+	/**
+	 * Checks if a part is really moving, and not just awake.
+	 */
+	private static boolean isMoving(PhysicsObject po) {
+		return !po.isAsleep() && po.restingSteps < SLEEP_STEPS / 2;
+	}
+
+	/**
+	 * Wakes up a part that a moving part touched. It keeps most of its
+	 * resting steps, so if the touch didn't move it, it goes back to sleep
+	 * soon.
+	 */
+	private static void wakeByTouch(PhysicsObject po) {
+		po.setAsleep(false);
+		po.restingSteps = SLEEP_STEPS - WAKE_STEPS;
+	}
+
+	/**
+	 * Counts how long each Updateable has been resting, and puts the ones
+	 * that have rested long enough to sleep. The parts of an island only fall
+	 * asleep together, once every one of them has rested long enough: a
+	 * sleeping part acts like a wall, and an awake part caught between it and
+	 * the floor would be squeezed.
+	 */
+	private static void updateSleep(CoreContext c, List<Updateable> partsToUpdate, double timeElapsed) {
+		double maxStep = SLEEP_SPEED * timeElapsed;
+
+		int islandCount = c.islands.getIslandCount();
+		if (c.islandRest.length < islandCount)
+			c.islandRest = new int[Math.max(islandCount, c.islandRest.length * 2)];
+		for (int i = 0; i < islandCount; i++)
+			c.islandRest[i] = Integer.MAX_VALUE;
+
+		for (Updateable u : partsToUpdate) {
+			PhysicsObject po = (PhysicsObject) u;
+
+			if (!c.sleepingAllowed) {
+				if (po.isAsleep())
+					po.wakeUp();
+				continue;
+			}
+
+			if (po.isAsleep())
+				continue;
+
+			Vector position = po.getPosition();
+			double x = position.getX();
+			double y = position.getY();
+			double stepX = x - po.lastX;
+			double stepY = y - po.lastY;
+			double dX = x - po.restX;
+			double dY = y - po.restY;
+			po.lastX = x;
+			po.lastY = y;
+
+			// a part that was woken by a touch starts from a standstill, so
+			// gravity alone moves it further than maxStep in its first step.
+			// it only has to stay close to where it fell asleep.
+			boolean steady = po.restingSteps >= SLEEP_STEPS - WAKE_STEPS || stepX * stepX + stepY * stepY < maxStep * maxStep;
+
+			if (steady && dX * dX + dY * dY < SLEEP_DISTANCE * SLEEP_DISTANCE) {
+				po.restingSteps++;
+			}
+			else {
+				// start resting again from here
+				po.restingSteps = 0;
+				po.restX = x;
+				po.restY = y;
+			}
+
+			int island = c.islands.getIsland(po);
+			if (island != -1)
+				c.islandRest[island] = Math.min(c.islandRest[island], po.restingSteps);
+		}
+
+		int sleepingCount = 0;
+
+		for (Updateable u : partsToUpdate) {
+			PhysicsObject po = (PhysicsObject) u;
+
+			if (!po.isAsleep() && c.sleepingAllowed && po.restingSteps >= SLEEP_STEPS) {
+				int island = c.islands.getIsland(po);
+				if (island == -1 || c.islandRest[island] >= SLEEP_STEPS)
+					po.setAsleep(true);
+			}
+
+			if (po.isAsleep())
+				sleepingCount++;
+		}
+
+		c.lastSleepingCount = sleepingCount;
+	}
+
+	/**
+	 * The detect phase. Checks every pair in <code>pairs</code> and puts the
+	 * ones that collide into the ContactLists of their chunks. Nothing in the
+	 * world is changed.
+	 */
+	private static void detect(CoreContext c) {
+		int pairCount = c.pairs.size();
+		c.chunkCount = (pairCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+		if (c.contacts.length < c.chunkCount) {
+			ContactList[] newContacts = new ContactList[Math.max(c.chunkCount, c.contacts.length * 2)];
+			System.arraycopy(c.contacts, 0, newContacts, 0, c.contacts.length);
+			CollisionContext[] newContexts = new CollisionContext[newContacts.length];
+			System.arraycopy(c.collisionContexts, 0, newContexts, 0, c.collisionContexts.length);
+			for (int chunk = c.contacts.length; chunk < newContacts.length; chunk++) {
+				newContacts[chunk] = new ContactList();
+				newContexts[chunk] = new CollisionContext();
+			}
+			c.contacts = newContacts;
+			c.collisionContexts = newContexts;
+			c.chunkAxisHits = new int[newContacts.length];
+			c.chunkAxisMisses = new int[newContacts.length];
+		}
+
+		// look up the axis of every pair that will be checked, before the
+		// chunks are checked (possibly in parallel)
+		if (c.axisSlots.length < pairCount)
+			c.axisSlots = new int[Math.max(pairCount, c.axisSlots.length * 2)];
+
+		c.axisCache.beginStep();
+		c.axisCache.ensureCapacity(pairCount);
+		for (int i = 0; i < pairCount; i++) {
+			if (!c.pairs.getFirst(i).isAsleep())
+				c.axisSlots[i] = c.axisCache.slotOf(ContactCache.key(c.pairs.getFirst(i), c.pairs.getSecond(i)));
+		}
+
+		ForkJoinPool pool = c.workerPool;
+		if (pool == null || pairCount < PARALLEL_THRESHOLD) {
+			for (int chunk = 0; chunk < c.chunkCount; chunk++)
+				detectChunk(c, chunk);
+		}
+		else {
+			// the lazily cached data of the objects has to be up to date
+			// before several threads start reading it
+			for (int i = 0; i < pairCount; i++) {
+				Collisions.prepare(c.pairs.getFirst(i));
+				Collisions.prepare(c.pairs.getSecond(i));
+			}
+
+			pool.invoke(new DetectTask(c, 0, c.chunkCount));
+		}
+
+		c.axisCache.endStep();
+
+		c.lastAxisHitCount = 0;
+		c.lastAxisMissCount = 0;
+		for (int chunk = 0; chunk < c.chunkCount; chunk++) {
+			c.lastAxisHitCount += c.chunkAxisHits[chunk];
+			c.lastAxisMissCount += c.chunkAxisMisses[chunk];
+		}
+	}
+
+	/**
+	 * Checks the pairs of one chunk. Runs on whatever thread the chunk's task
+	 * was given to, and only writes to the chunk's own ContactList and
+	 * CollisionContext.
+	 */
+	private static void detectChunk(CoreContext c, int chunk) {
+		ContactList list = c.contacts[chunk];
+		list.clear();
+
+		CollisionContext ctx = c.collisionContexts[chunk];
+		int end = Math.min((chunk + 1) * CHUNK_SIZE, c.pairs.size());
+		int hits = ctx.axisHits;
+		int misses = ctx.axisMisses;
+
+		for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+			// after wakeTouched(), a sleeping first object means that neither
+			// object of the pair can move
+			if (c.pairs.getFirst(i).isAsleep())
+				continue;
+
+			int slot = c.axisSlots[i];
+			CollisionResult collResult = Collisions.checkForCollision(c.pairs.getFirst(i), c.pairs.getSecond(i), ctx, c.axisCache.getAxis(slot));
+			c.axisCache.setAxis(slot, ctx.axis);
+
+			if (collResult.getCollisionOccurred() == true) {
+				Vector projection = collResult.getProjectionVector();
+				list.add(i, projection.getX(), projection.getY());
+			}
+		}
+
+		c.chunkAxisHits[chunk] = ctx.axisHits - hits;
+		c.chunkAxisMisses[chunk] = ctx.axisMisses - misses;
+	}
+
+	/**
+	 * The resolve phase. Sorts the contacts into islands (telling the
+	 * context's ContactListener about each one) and makes each pair
+	 * collide, island by island.
+	 */
+	private static void resolve(CoreContext c, double timeElapsed) {
+		c.islands.clear();
+
+		ContactListener listener = c.contactListener;
+
+		for (int chunk = 0; chunk < c.chunkCount; chunk++) {
+			ContactList list = c.contacts[chunk];
+
+			for (int k = 0; k < list.size(); k++) {
+				int i = list.getPair(k);
+				c.islands.addContact(i, list.getProjectionX(k), list.getProjectionY(k), c.pairs.getFirst(i), c.pairs.getSecond(i));
+
+				if (listener != null)
+					listener.contact(c.pairs.getFirst(i), c.pairs.getSecond(i));
+			}
+		}
+
+		c.islands.build();
+		c.solver.begin(c.islands, c.pairs, timeElapsed);
+
+		ForkJoinPool pool = c.workerPool;
+		if (pool == null || c.islands.getContactCount() < ISLAND_BATCH_SIZE * 2 || c.islands.getIslandCount() == 1)
+			solveIslands(c, 0, c.islands.getIslandCount());
+		else
+			pool.invoke(new IslandTask(c, 0, c.islands.getIslandCount()));
+
+		c.solver.end();
+
+		c.lastContactCount = c.islands.getContactCount();
+		c.lastIslandCount = c.islands.getIslandCount();
+		c.lastWarmStartCount = c.solver.getWarmStartCount();
+		c.lastSolverPassCount = c.solver.getPassCount();
+	}
+
+	/**
+	 * Solves the contacts of a range of islands: pushes the parts of each
+	 * contact partly apart, in order, then lets the ContactSolver fix their
+	 * velocities.
+	 * 
+	 * @param firstIsland
+	 *            the first island to solve
+	 * @param endIsland
+	 *            the island after the last one to solve
+	 */
+	private static void solveIslands(CoreContext c, int firstIsland, int endIsland) {
+		if (firstIsland == endIsland)
+			return;
+
+		int end = c.islands.getIslandEnd(endIsland - 1);
+
+		for (int k = c.islands.getIslandStart(firstIsland); k < end; k++) {
+			int i = c.islands.getPair(k);
+			PhysicsObject u = c.pairs.getFirst(i);
+			PhysicsObject po = c.pairs.getSecond(i);
+
+			// move the part(s) out of a deep overlap
+			double projX = c.islands.getProjectionX(k);
+			double projY = c.islands.getProjectionY(k);
+			double depth = Math.sqrt(projX * projX + projY * projY);
+			if (depth > MAX_OVERLAP) {
+				double scale = (depth - MAX_OVERLAP) / depth;
+				separate(u, po, projX * scale, projY * scale);
+			}
+			// only refit the parts of this island. a sleeping or static part
+			// can touch several islands that are solved on different threads
+			// at once, and it isn't moved anyway (see separate()), so its
+			// bounds are left alone. the test is the one ContactIslands uses
+			// to decide whether po joins the island.
+			u.updateBounds();
+			if (po instanceof Updateable && !po.isAsleep())
+				po.updateBounds();
+
+			// make the parts interact if needed
+			//if (parts.get(j) instanceof Interactable)
+			//	((Interactable) parts.get(j)).interact((Part) partsToUpdate.get(i));
+		}
+
+		// perform physics calculations
+		c.solver.solve(c.islands, c.pairs, firstIsland, endIsland, c.solverIterations);
+	}
+
+	/**
+	 * Pushes two colliding parts apart. A pair of Updateables is only solved
+	 * once per step, so both of them are moved, each by a share of the
+	 * projection vector that depends on the other one's mass (the heavier
+	 * part moves less). A part that doesn't move (or is asleep) is never
+	 * pushed.
+	 * 
+	 * @param u
+	 *            the Updateable part of the pair
+	 * @param po
+	 *            the other part
+	 * @param projX
+	 *            the x-component of the vector that moves <code>u</code> out
+	 *            of <code>po</code>
+	 * @param projY
+	 *            the y-component of that vector
+	 */
+	private static void separate(PhysicsObject u, PhysicsObject po, double projX, double projY) {
+		BodyStore store = u.getBodyStore();
+		if (store != null && po.getBodyStore() == store) {
+			separate(store, u.getBodyHandle(), po.getBodyHandle(), projX, projY);
+			return;
+		}
+
+		if (!(po instanceof Updateable) || po.isAsleep()) {
+			u.getPosition().addXComp(projX);
+			u.getPosition().addYComp(projY);
+			return;
+		}
+
+		double totalMass = u.getMass() + po.getMass();
+		double shareU = po.getMass() / totalMass;
+		double sharePo = u.getMass() / totalMass;
+
+		u.getPosition().addXComp(projX * shareU);
+		u.getPosition().addYComp(projY * shareU);
+		po.getPosition().addXComp(projX * -sharePo);
+		po.getPosition().addYComp(projY * -sharePo);
+	}
+
+	/**
+	 * Same as separate(PhysicsObject, PhysicsObject, double, double), but for two
+	 * bodies in a BodyStore. Works on the arrays directly.
+	 */
+	private static void separate(BodyStore store, int u, int po, double projX, double projY) {
+		if (!store.movable[po] || store.asleep[po]) {
+			store.posX[u] += projX;
+			store.posY[u] += projY;
+			return;
 		}
+
+		double totalMass = store.mass[u] + store.mass[po];
+		double shareU = store.mass[po] / totalMass;
+		double sharePo = store.mass[u] / totalMass;
+
+		store.posX[u] += projX * shareU;
+		store.posY[u] += projY * shareU;
+		store.posX[po] -= projX * sharePo;
+		store.posY[po] -= projY * sharePo;
 	}
 	
+
+	/**
+	 * Checks a range of chunks, splitting it in half until each task has a
+	 * single chunk.
+	 */
+	private static class DetectTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 6416528791263017204L;
+
+		// the context of the step, and the chunks to check, from firstChunk
+		// up to (not including) endChunk
+		private final CoreContext c;
+		private final int firstChunk;
+		private final int endChunk;
+
+		DetectTask(CoreContext c, int firstChunk, int endChunk) {
+			this.c = c;
+			this.firstChunk = firstChunk;
+			this.endChunk = endChunk;
+		}
+
+		@Override
+		protected void compute() {
+			if (endChunk - firstChunk == 1) {
+				detectChunk(c, firstChunk);
+				return;
+			}
+
+			int middle = (firstChunk + endChunk) >>> 1;
+			invokeAll(new DetectTask(c, firstChunk, middle), new DetectTask(c, middle, endChunk));
+		}
+
+	}
+
+	/**
+	 * Solves a range of islands, splitting it in half until each task has at
+	 * most ISLAND_BATCH_SIZE contacts (or a single island).
+	 */
+	private static class IslandTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -2903528370811463371L;
+
+		// the context of the step, and the islands to solve, from
+		// firstIsland up to (not including) endIsland
+		private final CoreContext c;
+		private final int firstIsland;
+		private final int endIsland;
+
+		IslandTask(CoreContext c, int firstIsland, int endIsland) {
+			this.c = c;
+			this.firstIsland = firstIsland;
+			this.endIsland = endIsland;
+		}
+
+		@Override
+		protected void compute() {
+			int contactCount = c.islands.getIslandEnd(endIsland - 1) - c.islands.getIslandStart(firstIsland);
+			if (endIsland - firstIsland == 1 || contactCount <= ISLAND_BATCH_SIZE) {
+				solveIslands(c, firstIsland, endIsland);
+				return;
+			}
+
+			int middle = (firstIsland + endIsland) >>> 1;
+			invokeAll(new IslandTask(c, firstIsland, middle), new IslandTask(c, middle, endIsland));
+		}
+
+	}
+
 }
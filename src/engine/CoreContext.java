@@ -0,0 +1,494 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+import java.util.concurrent.ForkJoinPool;
+
+/*+----------------------------------------------------------------------
+||
+||  Class CoreContext
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Everything Core remembers about one world: its settings
+||                  (the Broadphase, the number of solver iterations, ...),
+||                  the caches that carry over from one step to the next
+||                  (the ContactSolver's impulses, the separating axes), the
+||                  arrays it re-uses within a step, and the numbers it
+||                  keeps about the last step. These used to be static
+||                  fields of Core, so two worlds in one program shared them
+||                  and could not be stepped at the same time.
+||
+||                  Each world needs its own context (a PhysicsWorld makes
+||                  one for itself). Different contexts can be stepped on
+||                  different threads at once; one context must only be
+||                  stepped by one thread at a time. The threads of the
+||                  detect and resolve phases are shared by every context
+||                  unless setParallelism() is called; a context that has
+||                  threads of its own has to be closed when it is no longer
+||                  needed, or they keep running.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + CoreContext()
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + setBroadphase(Broadphase) : void
+||                  + getBroadphase() : Broadphase
+||                  + getLastStepTime() : long
+||                  + getLastPairCount() : int
+||                  + getLastContactCount() : int
+||                  + getLastIslandCount() : int
+||                  + getLastWarmStartCount() : int
+||                  + getLastSolverPassCount() : int
+||                  + getLastAxisHitCount() : int
+||                  + getLastAxisMissCount() : int
+||                  + getLastSleepingCount() : int
+||                  + getLastSubstepCount() : int
+||                  + setAdaptiveSubstepping(boolean) : void
+||                  + isAdaptiveSubstepping() : boolean
+||                  + setSleepingAllowed(boolean) : void
+||                  + isSleepingAllowed() : boolean
+||                  + setSolverIterations(int) : void
+||                  + getSolverIterations() : int
+||                  + setWarmStarting(boolean) : void
+||                  + isWarmStarting() : boolean
+||                  + setParallelism(int) : void
+||                  + getParallelism() : int
+||                  + close() : void
+||                  + setContactListener(ContactListener) : void
+||                  + getContactListener() : ContactListener
+||
+++-----------------------------------------------------------------------*/
+public class CoreContext {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * The threads that every context without a pool of its own uses, one
+	 * per processor. Created the first time a context is.
+	 */
+	private static ForkJoinPool sharedPool;
+
+	/**
+	 * Finds the pairs of parts that might be colliding. The default pairs
+	 * everything with everything, which is slow but always correct.
+	 */
+	Broadphase broadphase = new AllPairsBroadphase();
+	/**
+	 * The candidate pairs of the current step. Kept around so the arrays can
+	 * be re-used.
+	 */
+	final PairList pairs = new PairList();
+
+	/**
+	 * How long the last call to updatePhysicsObjects() took, in nanoseconds.
+	 */
+	long lastStepTime = 0;
+	/**
+	 * How many pairs were checked by Collisions in the last step.
+	 */
+	int lastPairCount = 0;
+	/**
+	 * How many of those pairs were actually colliding.
+	 */
+	int lastContactCount = 0;
+	/**
+	 * How many islands those contacts made up.
+	 */
+	int lastIslandCount = 0;
+	/**
+	 * How many of those contacts were warm started by the ContactSolver.
+	 */
+	int lastWarmStartCount = 0;
+	/**
+	 * How many passes the ContactSolver made, over all islands.
+	 */
+	int lastSolverPassCount = 0;
+	/**
+	 * How many polygon checks in the last step were settled by the axis
+	 * remembered from the step before, and how many had to test more.
+	 */
+	int lastAxisHitCount = 0;
+	int lastAxisMissCount = 0;
+	/**
+	 * How many Updateables were asleep at the end of the last step.
+	 */
+	int lastSleepingCount = 0;
+	/**
+	 * How many substeps the last step was cut into.
+	 */
+	int lastSubstepCount = 1;
+
+	/**
+	 * Whether steps are cut into substeps when parts move fast.
+	 */
+	boolean adaptiveSubstepping = true;
+	/**
+	 * Whether resting parts may fall asleep.
+	 */
+	boolean sleepingAllowed = true;
+	/**
+	 * The most times the ContactSolver goes over the contacts of an island.
+	 */
+	int solverIterations = 8;
+	/**
+	 * Told about every contact found, or <code>null</code>.
+	 */
+	ContactListener contactListener = null;
+
+	// the parts that are swept in the current step and the centers they
+	// started from. kept around so the arrays can be re-used.
+	PhysicsObject[] sweptParts = new PhysicsObject[16];
+	double[] sweptStartX = new double[16];
+	double[] sweptStartY = new double[16];
+	int sweptCount = 0;
+	// scratch space for the sweeps
+	final PairList sweptPairs = new PairList();
+	final double[] sweptNormal = new double[2];
+	final Vector sweptCenter = new Vector();
+
+	/**
+	 * The fewest resting steps of the parts of each island, worked out by
+	 * Core.updateSleep(). Kept around so the array can be re-used.
+	 */
+	int[] islandRest = new int[64];
+
+	/**
+	 * The threads that run the detect phase and solve the islands, or
+	 * <code>null</code> to do everything on the calling thread.
+	 */
+	volatile ForkJoinPool workerPool;
+	/**
+	 * Whether workerPool was made for this context (and so has to be shut
+	 * down when it is replaced), rather than being the shared one.
+	 */
+	private boolean ownsPool;
+
+	/**
+	 * The contacts found in each chunk of the current step, and the scratch
+	 * space each chunk is checked with. Kept around so the arrays can be
+	 * re-used.
+	 */
+	ContactList[] contacts = new ContactList[0];
+	CollisionContext[] collisionContexts = new CollisionContext[0];
+	int chunkCount = 0;
+	/**
+	 * The axis each pair of the last steps was separated on, and the slot
+	 * of each pair of the current step in it.
+	 */
+	final SeparatingAxisCache axisCache = new SeparatingAxisCache();
+	int[] axisSlots = new int[0];
+	// the axis hits and misses of each chunk of the current step
+	int[] chunkAxisHits = new int[0];
+	int[] chunkAxisMisses = new int[0];
+	/**
+	 * The contacts of the current step, sorted into islands.
+	 */
+	final ContactIslands islands = new ContactIslands();
+	/**
+	 * Turns the contacts of each island into impulses.
+	 */
+	final ContactSolver solver = new ContactSolver();
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new CoreContext with the default settings, using the shared
+	 * threads.
+	 */
+	public CoreContext() {
+		workerPool = getSharedPool();
+		ownsPool = false;
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Sets the Broadphase that is used to find the pairs of parts that need
+	 * to be checked for collisions. A Broadphase keeps arrays of its own, so
+	 * it must not be given to more than one context.
+	 *
+	 * @param bp
+	 *            the Broadphase to use from the next step on
+	 */
+	public void setBroadphase(Broadphase bp) {
+		if (bp == null)
+			throw new IllegalArgumentException("Broadphase cannot be null!");
+
+		broadphase = bp;
+	}
+
+	public Broadphase getBroadphase() {
+		return broadphase;
+	}
+
+	/**
+	 * Gets the time taken by the last call to updatePhysicsObjects(). Used to
+	 * compare the Broadphases.
+	 *
+	 * @return the step time in nanoseconds
+	 */
+	public long getLastStepTime() {
+		return lastStepTime;
+	}
+
+	/**
+	 * Gets the number of pairs that went through the narrowphase
+	 * (Collisions.checkForCollision()) in the last step.
+	 *
+	 * @return the pair count
+	 */
+	public int getLastPairCount() {
+		return lastPairCount;
+	}
+
+	/**
+	 * Gets the number of pairs that were found to be colliding in the last
+	 * step.
+	 *
+	 * @return the contact count
+	 */
+	public int getLastContactCount() {
+		return lastContactCount;
+	}
+
+	/**
+	 * Gets the number of contact islands (independent groups of touching
+	 * moving parts) in the last step.
+	 *
+	 * @return the island count
+	 */
+	public int getLastIslandCount() {
+		return lastIslandCount;
+	}
+
+	/**
+	 * Gets the number of contacts in the last step that started from the
+	 * impulses of the step before.
+	 *
+	 * @return the warm start count
+	 */
+	public int getLastWarmStartCount() {
+		return lastWarmStartCount;
+	}
+
+	/**
+	 * Gets the number of passes the contact solver made in the last step,
+	 * added up over all islands. Divided by the island count, this is how
+	 * many iterations an island needed on average.
+	 *
+	 * @return the pass count
+	 */
+	public int getLastSolverPassCount() {
+		return lastSolverPassCount;
+	}
+
+	/**
+	 * Gets the number of pairs in the last step that were found to be apart
+	 * by testing only the axis that separated them the step before.
+	 *
+	 * @return the hit count
+	 */
+	public int getLastAxisHitCount() {
+		return lastAxisHitCount;
+	}
+
+	/**
+	 * Gets the number of polygon pairs in the last step that had to be
+	 * tested on more than the remembered axis (because they touched, the
+	 * axis no longer separated them, or there was none).
+	 *
+	 * @return the miss count
+	 */
+	public int getLastAxisMissCount() {
+		return lastAxisMissCount;
+	}
+
+	/**
+	 * Gets the number of Updateables that were asleep at the end of the last
+	 * step.
+	 *
+	 * @return the sleeping count
+	 */
+	public int getLastSleepingCount() {
+		return lastSleepingCount;
+	}
+
+	/**
+	 * Gets the number of substeps the last step was cut into.
+	 *
+	 * @return the substep count; 1 if the step wasn't cut
+	 */
+	public int getLastSubstepCount() {
+		return lastSubstepCount;
+	}
+
+	/**
+	 * Sets whether a step is cut into smaller substeps when parts move fast
+	 * enough to pass through other parts.
+	 *
+	 * @param adaptive
+	 *            true to cut steps when needed (the default)
+	 */
+	public void setAdaptiveSubstepping(boolean adaptive) {
+		adaptiveSubstepping = adaptive;
+	}
+
+	public boolean isAdaptiveSubstepping() {
+		return adaptiveSubstepping;
+	}
+
+	/**
+	 * Sets whether parts that have come to rest may fall asleep. When
+	 * sleeping is turned off, sleeping parts are woken up in the next step.
+	 *
+	 * @param allowed
+	 *            true to let parts sleep (the default)
+	 */
+	public void setSleepingAllowed(boolean allowed) {
+		sleepingAllowed = allowed;
+	}
+
+	public boolean isSleepingAllowed() {
+		return sleepingAllowed;
+	}
+
+	/**
+	 * Sets how many times the contacts of an island are gone over in each
+	 * step. More iterations make piles of parts settle faster, but take
+	 * longer.
+	 *
+	 * @param iterations
+	 *            the number of iterations, at least 1 (the default is 8)
+	 */
+	public void setSolverIterations(int iterations) {
+		if (iterations < 1)
+			throw new IllegalArgumentException("There must be at least one iteration!");
+
+		solverIterations = iterations;
+	}
+
+	public int getSolverIterations() {
+		return solverIterations;
+	}
+
+	/**
+	 * Sets whether the contacts of a step start from the impulses they ended
+	 * the step before with, which lets resting piles settle in fewer
+	 * iterations.
+	 *
+	 * @param warmStarting
+	 *            true to warm start (the default)
+	 */
+	public void setWarmStarting(boolean warmStarting) {
+		solver.setWarmStarting(warmStarting);
+	}
+
+	public boolean isWarmStarting() {
+		return solver.isWarmStarting();
+	}
+
+	/**
+	 * Sets how many threads check the pairs for collisions and solve the
+	 * contact islands of this context. By default it shares one thread per
+	 * processor with every other context. When many worlds are stepped at
+	 * once, each on a thread of its own, 1 is usually best. More than 1
+	 * starts threads for this context alone, which are stopped by close().
+	 *
+	 * @param threads
+	 *            the number of threads; 1 does everything on the thread that
+	 *            calls Core.updatePhysicsObjects()
+	 */
+	public void setParallelism(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("There must be at least one thread!");
+
+		ForkJoinPool oldPool = workerPool;
+		boolean ownedOldPool = ownsPool;
+
+		workerPool = threads > 1 ? new ForkJoinPool(threads) : null;
+		ownsPool = workerPool != null;
+
+		if (oldPool != null && ownedOldPool)
+			oldPool.shutdown();
+	}
+
+	public int getParallelism() {
+		ForkJoinPool pool = workerPool;
+		return pool == null ? 1 : pool.getParallelism();
+	}
+
+	/**
+	 * Stops the threads that setParallelism() started for this context, if
+	 * any. The shared threads are left alone. The context can still be
+	 * stepped afterwards, on the calling thread only, until setParallelism()
+	 * is called again.
+	 */
+	public void close() {
+		if (!ownsPool)
+			return;
+
+		ForkJoinPool oldPool = workerPool;
+		workerPool = null;
+		ownsPool = false;
+		oldPool.shutdown();
+	}
+
+	/**
+	 * Sets who is told about the contacts found in each step (see
+	 * ContactListener). There is only one listener; setting another
+	 * replaces it.
+	 *
+	 * @param listener
+	 *            the listener, or <code>null</code> for none (the default)
+	 */
+	public void setContactListener(ContactListener listener) {
+		contactListener = listener;
+	}
+
+	public ContactListener getContactListener() {
+		return contactListener;
+	}
+
+	/**
+	 * Gets the pool shared by the contexts that don't have their own,
+	 * creating it if needed.
+	 *
+	 * @return the pool, or <code>null</code> if there is only one processor
+	 */
+	private static synchronized ForkJoinPool getSharedPool() {
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (sharedPool == null && threads > 1)
+			sharedPool = new ForkJoinPool(threads);
+
+		return sharedPool;
+	}
+
+}
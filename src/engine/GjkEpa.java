@@ -0,0 +1,341 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+/*+----------------------------------------------------------------------
+||
+||  Class GjkEpa
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  A collision check that works for any two convex shapes,
+||                  as long as it can be asked for the point of each shape
+||                  that lies furthest in a given direction (its support
+||                  point). It is used for the pairs that the Separating Axis
+||                  Theorem can't handle: ellipses that aren't circles (like
+||                  the Balloon) and capsules.
+||
+||                  Two shapes overlap if and only if their Minkowski
+||                  difference (every point of a minus every point of b)
+||                  contains the origin. GJK (Gilbert-Johnson-Keerthi) looks
+||                  for a triangle of support points of the difference that
+||                  contains the origin, moving towards the origin one point
+||                  at a time. If it finds one, EPA (Expanding Polytope
+||                  Algorithm) grows the triangle outwards, always at the
+||                  edge closest to the origin, until that edge is (nearly)
+||                  on the boundary of the difference. The edge's normal and
+||                  distance are the direction and depth of the overlap.
+||                  See:
+||                  * http://www.dyn4j.org/2010/04/gjk-gilbert-johnson-keerthi/
+||                  * http://www.dyn4j.org/2010/05/epa-expanding-polytope-algorithm/
+||
+||                  All the points are kept in the arrays of the
+||                  CollisionContext, so a check creates no garbage.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  N/A
+||
+||  Class Methods:  + check(PhysicsObject, PhysicsObject, CollisionContext) : CollisionResult
+||
+||  Inst. Methods:  N/A
+||
+++-----------------------------------------------------------------------*/
+public class GjkEpa {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * The most points GJK adds before giving up. It needs only a few for
+	 * polygons, but can creep towards the origin along a curved shape.
+	 */
+	private static final int MAX_GJK_ITERATIONS = 32;
+	/**
+	 * The most points the EPA polytope may have. A curved shape is never
+	 * matched exactly, so this (together with EPA_TOLERANCE) decides how
+	 * close the depth gets.
+	 */
+	static final int MAX_POLYTOPE = 32;
+	/**
+	 * EPA stops once the closest edge is this close (m) to the boundary of
+	 * the Minkowski difference.
+	 */
+	private static final double EPA_TOLERANCE = 1.0e-4;
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Checks two convex objects of any CollisionBoundType except LINE.
+	 * 
+	 * @param a
+	 *            the first object
+	 * @param b
+	 *            the second object
+	 * @param ctx
+	 *            the scratch space to use
+	 * @return the result; if they collide, the projection vector pushes a
+	 *         out of b
+	 */
+	public static CollisionResult check(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
+		double[] s = ctx.simplex;
+
+		// start looking from b towards a
+		a.getCenter(ctx.centerA);
+		b.getCenter(ctx.centerB);
+		double dX = ctx.centerA.getX() - ctx.centerB.getX();
+		double dY = ctx.centerA.getY() - ctx.centerB.getY();
+		if (dX == 0.0 && dY == 0.0)
+			dX = 1.0;
+
+		support(a, b, dX, dY, ctx);
+		s[0] = ctx.support[0];
+		s[1] = ctx.support[1];
+		int n = 1;
+		dX = -s[0];
+		dY = -s[1];
+
+		boolean found = false;
+		for (int iteration = 0; iteration < MAX_GJK_ITERATIONS; iteration++) {
+			if (dX == 0.0 && dY == 0.0)
+				// the origin is on the simplex: the shapes just touch
+				return ctx.noCollisionDetected;
+
+			support(a, b, dX, dY, ctx);
+			double pX = ctx.support[0];
+			double pY = ctx.support[1];
+			if (pX * dX + pY * dY <= 0.0)
+				// the difference doesn't reach past the origin in this
+				// direction, so it can't contain it
+				return ctx.noCollisionDetected;
+
+			// the newest point is always kept last
+			s[n * 2] = pX;
+			s[n * 2 + 1] = pY;
+			n++;
+
+			if (n == 2) {
+				// a line: look from it towards the origin
+				double abX = s[0] - pX;
+				double abY = s[1] - pY;
+				double side = abX * -pY - abY * -pX;
+				if (side == 0.0)
+					// the origin is on the line; either side will do
+					side = 1.0;
+				dX = -abY * side;
+				dY = abX * side;
+			}
+			else {
+				// a triangle: does it contain the origin, or which of the
+				// edges next to the newest point does the origin lie past?
+				double abX = s[2] - pX;
+				double abY = s[3] - pY;
+				double acX = s[0] - pX;
+				double acY = s[1] - pY;
+				double winding = abX * acY - abY * acX;
+
+				// the outward normals of the edges ab and ac
+				double abNX = abY * winding;
+				double abNY = -abX * winding;
+				double acNX = -acY * winding;
+				double acNY = acX * winding;
+
+				if (abNX * -pX + abNY * -pY > 0.0) {
+					// drop c
+					s[0] = s[2];
+					s[1] = s[3];
+					s[2] = pX;
+					s[3] = pY;
+					n = 2;
+					dX = abNX;
+					dY = abNY;
+				}
+				else if (acNX * -pX + acNY * -pY > 0.0) {
+					// drop b
+					s[2] = pX;
+					s[3] = pY;
+					n = 2;
+					dX = acNX;
+					dY = acNY;
+				}
+				else {
+					found = true;
+					break;
+				}
+			}
+		}
+
+		if (!found)
+			return ctx.noCollisionDetected;
+
+		return expand(a, b, ctx);
+	}
+
+	/**
+	 * Runs EPA, starting from the triangle that GJK found.
+	 */
+	private static CollisionResult expand(PhysicsObject a, PhysicsObject b, CollisionContext ctx) {
+		double[] p = ctx.polytope;
+		double[] s = ctx.simplex;
+
+		// copy the triangle, counter-clockwise
+		int n = 3;
+		System.arraycopy(s, 0, p, 0, 6);
+		if ((p[2] - p[0]) * (p[5] - p[1]) - (p[3] - p[1]) * (p[4] - p[0]) < 0.0) {
+			p[2] = s[4];
+			p[3] = s[5];
+			p[4] = s[2];
+			p[5] = s[3];
+		}
+
+		double normalX = 0.0;
+		double normalY = 0.0;
+		double depth = 0.0;
+
+		while (true) {
+			// find the edge closest to the origin
+			int closest = -1;
+			depth = Double.MAX_VALUE;
+			for (int i = 0; i < n; i++) {
+				int j = i + 1 == n ? 0 : i + 1;
+				double eX = p[j * 2] - p[i * 2];
+				double eY = p[j * 2 + 1] - p[i * 2 + 1];
+				double length = Math.sqrt(eX * eX + eY * eY);
+				if (length == 0.0)
+					continue;
+
+				// outward normal of a counter-clockwise edge
+				double nX = eY / length;
+				double nY = -eX / length;
+				double distance = nX * p[i * 2] + nY * p[i * 2 + 1];
+
+				if (distance < depth) {
+					depth = distance;
+					normalX = nX;
+					normalY = nY;
+					closest = i;
+				}
+			}
+
+			if (closest == -1)
+				return ctx.noCollisionDetected;
+
+			support(a, b, normalX, normalY, ctx);
+			double reach = ctx.support[0] * normalX + ctx.support[1] * normalY;
+
+			if (reach - depth < EPA_TOLERANCE || n == MAX_POLYTOPE)
+				break;
+
+			// put the new point in after the closest edge's first point
+			int insert = closest + 1;
+			System.arraycopy(p, insert * 2, p, insert * 2 + 2, (n - insert) * 2);
+			p[insert * 2] = ctx.support[0];
+			p[insert * 2 + 1] = ctx.support[1];
+			n++;
+		}
+
+		if (depth <= 0.0)
+			return ctx.noCollisionDetected;
+
+		// moving a by -normal * depth moves the origin onto the boundary of
+		// the difference
+		ctx.collisionDetected.getProjectionVector().set(-normalX * depth, -normalY * depth);
+		ctx.collisionDetected.setCollisionOccurred(true);
+		return ctx.collisionDetected;
+	}
+
+	/**
+	 * Gets the support point of the Minkowski difference a - b in the
+	 * direction (dX, dY) and puts it into ctx.support.
+	 */
+	private static void support(PhysicsObject a, PhysicsObject b, double dX, double dY, CollisionContext ctx) {
+		double[] out = ctx.support;
+
+		supportOf(a, dX, dY, ctx.centerA, out);
+		double aX = out[0];
+		double aY = out[1];
+
+		supportOf(b, -dX, -dY, ctx.centerB, out);
+		out[0] = aX - out[0];
+		out[1] = aY - out[1];
+	}
+
+	/**
+	 * Gets the point of one object that lies furthest in the direction
+	 * (dX, dY), which doesn't have to be a unit vector.
+	 * 
+	 * @param center
+	 *            the object's center, as found by getCenter()
+	 * @param out
+	 *            where the point is put
+	 */
+	private static void supportOf(PhysicsObject po, double dX, double dY, Vector center, double[] out) {
+		switch (po.getCollisionBoundType()) {
+			case ELLIPSE: {
+				// the point of the ellipse whose normal is (dX, dY)
+				double rX = po.getWidth() / 2;
+				double rY = po.getHeight() / 2;
+				double sX = rX * rX * dX;
+				double sY = rY * rY * dY;
+				double length = Math.sqrt(sX * dX + sY * dY);
+				out[0] = center.getX() + sX / length;
+				out[1] = center.getY() + sY / length;
+				break;
+			}
+
+			case CAPSULE: {
+				// a segment along the longer side, grown by the radius
+				double width = po.getWidth();
+				double height = po.getHeight();
+				double radius = Math.min(width, height) / 2;
+				double halfX = width > height ? width / 2 - radius : 0.0;
+				double halfY = width > height ? 0.0 : height / 2 - radius;
+				double length = Math.sqrt(dX * dX + dY * dY);
+				out[0] = center.getX() + (dX >= 0.0 ? halfX : -halfX) + radius * dX / length;
+				out[1] = center.getY() + (dY >= 0.0 ? halfY : -halfY) + radius * dY / length;
+				break;
+			}
+
+			default: {
+				// the vertex with the largest projection
+				double[] vertices = po.getVertices();
+				int best = 0;
+				double bestDot = vertices[0] * dX + vertices[1] * dY;
+				for (int i = 2; i < vertices.length; i += 2) {
+					double dot = vertices[i] * dX + vertices[i + 1] * dY;
+					if (dot > bestDot) {
+						bestDot = dot;
+						best = i;
+					}
+				}
+				out[0] = vertices[best];
+				out[1] = vertices[best + 1];
+				break;
+			}
+		}
+	}
+
+}
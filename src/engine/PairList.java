@@ -0,0 +1,145 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+/*+----------------------------------------------------------------------
+||
+||  Class PairList
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  A growable list of PhysicsObject pairs, filled by a
+||                  Broadphase and read by Core. The backing arrays are kept
+||                  between steps so that clearing and refilling the list does
+||                  not create any garbage once it has grown large enough.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + PairList()
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + add(PhysicsObject, PhysicsObject) : void
+||                  + clear() : void
+||                  + size() : int
+||                  + getFirst(int) : PhysicsObject
+||                  + getSecond(int) : PhysicsObject
+||                  + swap(int) : void
+||
+++-----------------------------------------------------------------------*/
+public class PairList {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * The first object of each pair.
+	 */
+	private PhysicsObject[] first;
+	/**
+	 * The second object of each pair.
+	 */
+	private PhysicsObject[] second;
+	/**
+	 * The number of pairs in the list.
+	 */
+	private int size;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new, empty PairList.
+	 */
+	public PairList() {
+		first = new PhysicsObject[64];
+		second = new PhysicsObject[64];
+		size = 0;
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Adds a pair to the end of the list.
+	 *
+	 * @param a
+	 *            the first object of the pair
+	 * @param b
+	 *            the second object of the pair
+	 */
+	public void add(PhysicsObject a, PhysicsObject b) {
+		if (size == first.length) {
+			PhysicsObject[] newFirst = new PhysicsObject[size * 2];
+			PhysicsObject[] newSecond = new PhysicsObject[size * 2];
+			System.arraycopy(first, 0, newFirst, 0, size);
+			System.arraycopy(second, 0, newSecond, 0, size);
+			first = newFirst;
+			second = newSecond;
+		}
+
+		first[size] = a;
+		second[size] = b;
+		size++;
+	}
+
+	/**
+	 * Empties the list. The references are dropped so that removed parts can
+	 * be garbage collected.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			first[i] = null;
+			second[i] = null;
+		}
+
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public PhysicsObject getFirst(int i) {
+		return first[i];
+	}
+
+	public PhysicsObject getSecond(int i) {
+		return second[i];
+	}
+
+	/**
+	 * Swaps the first and second object of a pair.
+	 *
+	 * @param i
+	 *            the index of the pair
+	 */
+	public void swap(int i) {
+		PhysicsObject temp = first[i];
+		first[i] = second[i];
+		second[i] = temp;
+	}
+
+}
@@ -18,6 +18,8 @@
 package engine;
 
 import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
 import java.io.Serializable;
 
 /**
@@ -75,6 +77,53 @@ public abstract class PhysicsObject implements Serializable {
 	protected Vector acceleration;
 	
 	protected CollisionBoundType collisionBoundType;
+	/**
+	 * The BodyStore this object's state lives in, or <code>null</code> if it
+	 * keeps its own Vectors. Not saved, since a loaded part is never in a
+	 * store.
+	 */
+	private transient BodyStore bodyStore;
+	/**
+	 * This object's slot in the BodyStore.
+	 */
+	private transient int bodyHandle;
+	/**
+	 * The corners of a polygonal object in world space, as x0, y0, x1, y1,
+	 * etc. Read from the Shape once and then kept until the object moves.
+	 */
+	private transient double[] vertices;
+	/**
+	 * The unit right-hand normal of each edge (from vertex i to vertex i + 1),
+	 * stored the same way as the vertices.
+	 */
+	private transient double[] edgeNormals;
+	// the position the vertices were read at
+	private transient double verticesX, verticesY;
+	// the axis-aligned bounding box, in world meters. kept up to date by
+	// updateBounds(), which Core calls whenever it moves the object.
+	private transient double minX, minY, maxX, maxY;
+	private transient boolean boundsKnown;
+	// where the bounding box is relative to the position. taken from the
+	// Shape once, since the Shape never changes size.
+	private transient double offsetMinX, offsetMinY, offsetMaxX, offsetMaxY;
+	private transient boolean offsetsKnown;
+	/**
+	 * This object's index in the ContactIslands that last saw it. Only used
+	 * by ContactIslands, which checks that it is still valid.
+	 */
+	transient int islandIndex;
+	/**
+	 * Whether this object is asleep: it has been at rest for a while, so Core
+	 * stops moving it and checking it for collisions until something wakes
+	 * it up. Only Updateables fall asleep.
+	 */
+	private transient boolean asleep;
+	// how many steps in a row this object has been at rest, where it was
+	// when it came to rest and where it was at the end of the last step.
+	// used by Core to decide when it falls asleep.
+	transient int restingSteps;
+	transient double restX, restY;
+	transient double lastX, lastY;
 	
 	//protected Shape shape;
 
@@ -103,7 +152,12 @@ public abstract class PhysicsObject implements Serializable {
 	 *            a Point object.
 	 */
 	public void setPosition(Vector aPoint) {
-		this.position = aPoint;
+		if (bodyStore != null)
+			this.position.setVector(aPoint); // keep the view of the store
+		else
+			this.position = aPoint;
+		
+		boundsKnown = false;
 	}
 
 	/**
@@ -114,7 +168,10 @@ public abstract class PhysicsObject implements Serializable {
 	 *            a Vector object
 	 */
 	public void setVelocity(Vector aVelocity) {
-		this.velocity = aVelocity;
+		if (bodyStore != null)
+			this.velocity.setVector(aVelocity);
+		else
+			this.velocity = aVelocity;
 	}
 
 	/**
@@ -125,7 +182,10 @@ public abstract class PhysicsObject implements Serializable {
 	 *            a Vector Object
 	 */
 	public void setAcceleration(Vector aAcceleration) {
-		this.acceleration = aAcceleration;
+		if (bodyStore != null)
+			this.acceleration.setVector(aAcceleration);
+		else
+			this.acceleration = aAcceleration;
 	}
 
 
@@ -194,6 +254,36 @@ public abstract class PhysicsObject implements Serializable {
 	
 	public abstract Vector getCenter();
 	
+	/**
+	 * Gets a number that tells this object apart from every other object in
+	 * the world. Used to find the contacts of the last step again (see
+	 * ContactCache).
+	 * 
+	 * @return the serial number
+	 */
+	public abstract int getSerialNum();
+	
+	/**
+	 * Puts the center of this object into the given Vector instead of
+	 * creating a new one.
+	 * 
+	 * @param result
+	 *            where the center is stored
+	 */
+	public void getCenter(Vector result) {
+		result.setVector(getCenter());
+	}
+	
+	/**
+	 * Gets how strongly gravity pulls on this object. Normal objects fall
+	 * (1.0); a negative value makes the object rise instead.
+	 * 
+	 * @return the factor that gravity is multiplied by
+	 */
+	public double getGravityScale() {
+		return 1.0;
+	}
+	
 	/**
 	 * 
 	 * @return
@@ -204,4 +294,269 @@ public abstract class PhysicsObject implements Serializable {
 		return this.collisionBoundType;
 	}
 	
+	/**
+	 * Recalculates the bounding box from the current position. Must be called
+	 * after the object moves; Core does this once per step after integrating,
+	 * and again after pushing colliding objects apart.
+	 */
+	public void updateBounds() {
+		if (!offsetsKnown) {
+			Rectangle2D bounds = getShape().getBounds2D();
+			offsetMinX = bounds.getMinX() - position.getX();
+			offsetMinY = bounds.getMinY() - position.getY();
+			offsetMaxX = bounds.getMaxX() - position.getX();
+			offsetMaxY = bounds.getMaxY() - position.getY();
+			offsetsKnown = true;
+		}
+		
+		double x = position.getX();
+		double y = position.getY();
+		minX = x + offsetMinX;
+		minY = y + offsetMinY;
+		maxX = x + offsetMaxX;
+		maxY = y + offsetMaxY;
+		boundsKnown = true;
+	}
+	
+	/**
+	 * Gets the left edge of the bounding box.
+	 */
+	public double getMinX() {
+		if (!boundsKnown)
+			updateBounds();
+		return minX;
+	}
+	
+	/**
+	 * Gets the bottom edge of the bounding box.
+	 */
+	public double getMinY() {
+		if (!boundsKnown)
+			updateBounds();
+		return minY;
+	}
+	
+	/**
+	 * Gets the right edge of the bounding box.
+	 */
+	public double getMaxX() {
+		if (!boundsKnown)
+			updateBounds();
+		return maxX;
+	}
+	
+	/**
+	 * Gets the top edge of the bounding box.
+	 */
+	public double getMaxY() {
+		if (!boundsKnown)
+			updateBounds();
+		return maxY;
+	}
+	
+	/**
+	 * Checks if the bounding boxes of this object and another one overlap.
+	 * This is the cheap test that is done before any real collision check.
+	 * 
+	 * @param other
+	 *            the other object
+	 * @return true if the boxes overlap (or touch)
+	 */
+	public boolean boundsOverlap(PhysicsObject other) {
+		return getMinX() <= other.getMaxX() && other.getMinX() <= getMaxX() && getMinY() <= other.getMaxY() && other.getMinY() <= getMaxY();
+	}
+	
+	/**
+	 * Gets the corners of this object's (polygonal) Shape in world space, as
+	 * x0, y0, x1, y1, etc. The array is cached and only recalculated after
+	 * the object has moved, so it must not be changed by the caller.
+	 * 
+	 * @return the vertices
+	 */
+	public double[] getVertices() {
+		updateVertices();
+		return this.vertices;
+	}
+	
+	/**
+	 * Gets the unit normals of the edges of this object's (polygonal) Shape,
+	 * stored like the vertices. Normal i belongs to the edge from vertex i to
+	 * vertex i + 1. Cached like getVertices().
+	 * 
+	 * @return the edge normals
+	 */
+	public double[] getEdgeNormals() {
+		updateVertices();
+		return this.edgeNormals;
+	}
+	
+	/**
+	 * Gets the corners of this object's (convex) Shape relative to its
+	 * position, as x0, y0, x1, y1, etc., for objects that know them. Their
+	 * vertices are then just moved along with the object instead of being
+	 * read from the Shape, and since the shape doesn't turn, their edge
+	 * normals are only worked out once. Any number of corners will do.
+	 * 
+	 * @return the vertices, or <code>null</code> (the default) to read them
+	 *         from the Shape
+	 */
+	protected double[] getLocalVertices() {
+		return null;
+	}
+	
+	/**
+	 * Re-reads the vertices from the Shape if the object moved since the last
+	 * time (or they were never read).
+	 */
+	private void updateVertices() {
+		if (vertices != null && verticesX == position.getX() && verticesY == position.getY())
+			return;
+		
+		verticesX = position.getX();
+		verticesY = position.getY();
+		
+		double[] local = getLocalVertices();
+		if (local != null) {
+			boolean fresh = vertices == null || vertices.length != local.length;
+			if (fresh) {
+				vertices = new double[local.length];
+				edgeNormals = new double[local.length];
+			}
+			
+			for (int i = 0; i < local.length; i += 2) {
+				vertices[i] = verticesX + local[i];
+				vertices[i + 1] = verticesY + local[i + 1];
+			}
+			
+			if (fresh)
+				updateEdgeNormals();
+			return;
+		}
+		
+		// count the corners first
+		int n = 0;
+		double[] coords = new double[6];
+		for (PathIterator pi = getShape().getPathIterator(null); !pi.isDone(); pi.next()) {
+			if (pi.currentSegment(coords) != PathIterator.SEG_CLOSE)
+				n++;
+		}
+		
+		if (vertices == null || vertices.length != n * 2) {
+			vertices = new double[n * 2];
+			edgeNormals = new double[n * 2];
+		}
+		
+		int i = 0;
+		for (PathIterator pi = getShape().getPathIterator(null); !pi.isDone(); pi.next()) {
+			if (pi.currentSegment(coords) != PathIterator.SEG_CLOSE) {
+				vertices[i++] = coords[0];
+				vertices[i++] = coords[1];
+			}
+		}
+		
+		updateEdgeNormals();
+	}
+	
+	/**
+	 * Works out the edge normals from the vertices.
+	 */
+	private void updateEdgeNormals() {
+		int n = vertices.length / 2;
+		for (int v = 0; v < n; v++) {
+			int next = (v + 1) % n;
+			double edgeX = vertices[next * 2] - vertices[v * 2];
+			double edgeY = vertices[next * 2 + 1] - vertices[v * 2 + 1];
+			double length = Math.sqrt(edgeX * edgeX + edgeY * edgeY);
+			
+			edgeNormals[v * 2] = edgeY * -1 / length;
+			edgeNormals[v * 2 + 1] = edgeX / length;
+		}
+	}
+	
+	/**
+	 * Checks if this object is asleep. A sleeping object is not moved and
+	 * acts like a static part in collisions, until it is woken up.
+	 * 
+	 * @return true if the object is asleep
+	 */
+	public boolean isAsleep() {
+		return this.asleep;
+	}
+	
+	/**
+	 * Wakes this object up and makes it start resting from scratch, so it
+	 * stays awake for at least as long as it takes to fall asleep. Used when
+	 * the world around the object changes, like when a part is placed next
+	 * to it.
+	 */
+	public void wakeUp() {
+		setAsleep(false);
+		this.restingSteps = 0;
+	}
+	
+	/**
+	 * Puts this object to sleep or wakes it up, keeping the BodyStore (if
+	 * any) in step. An object that falls asleep is stopped.
+	 */
+	void setAsleep(boolean asleep) {
+		if (asleep) {
+			this.velocity.set(0.0, 0.0);
+			this.acceleration.set(0.0, 0.0);
+		}
+		
+		this.asleep = asleep;
+		if (this.bodyStore != null)
+			this.bodyStore.asleep[this.bodyHandle] = asleep;
+	}
+	
+	/**
+	 * Gets the BodyStore that holds this object's state.
+	 * 
+	 * @return the store, or <code>null</code> if the object is not in one
+	 */
+	public BodyStore getBodyStore() {
+		return this.bodyStore;
+	}
+	
+	/**
+	 * Gets this object's handle (index) in its BodyStore. Only meaningful if
+	 * getBodyStore() is not <code>null</code>.
+	 */
+	public int getBodyHandle() {
+		return this.bodyHandle;
+	}
+	
+	/**
+	 * Called by a BodyStore when this object is added to it. Replaces the
+	 * Vectors with views of the store's arrays.
+	 */
+	void attach(BodyStore store, int handle) {
+		this.bodyStore = store;
+		this.bodyHandle = handle;
+		this.position = new BodyVector(store, BodyVector.POSITION, handle);
+		this.velocity = new BodyVector(store, BodyVector.VELOCITY, handle);
+		this.acceleration = new BodyVector(store, BodyVector.ACCELERATION, handle);
+	}
+	
+	/**
+	 * Called by a BodyStore when this object is removed from it. The views are
+	 * replaced by plain Vectors holding the last state.
+	 */
+	void detach() {
+		this.position = new Vector(position.getX(), position.getY());
+		this.velocity = new Vector(velocity.getX(), velocity.getY());
+		this.acceleration = new Vector(acceleration.getX(), acceleration.getY());
+		this.bodyStore = null;
+	}
+	
+	/**
+	 * Called by a BodyStore when this object is moved to another slot.
+	 */
+	void setBodyHandle(int handle) {
+		this.bodyHandle = handle;
+		((BodyVector) position).handle = handle;
+		((BodyVector) velocity).handle = handle;
+		((BodyVector) acceleration).handle = handle;
+	}
+	
 }
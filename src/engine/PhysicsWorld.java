@@ -0,0 +1,347 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*+----------------------------------------------------------------------
+||
+||  Class PhysicsWorld
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  A simulation that can be run without a screen. It owns
+||                  the parts in the world, the gravity and the length of a
+||                  step, and keeps everything Core needs to step them: the
+||                  BodyStore that holds their state, the AABBTree of the
+||                  parts that never move and the lists of the ones that
+||                  do. step() runs as fast as it can and never sleeps, so
+||                  whoever drives the world decides how it relates to real
+||                  time (the WorldPanel keeps it in step with the clock and
+||                  draws it; a batch run just steps it).
+||
+||                  The parts are in the BodyStore from the moment they are
+||                  added until they are removed, so their Vectors are views
+||                  of the store's arrays the whole time (see BodyStore).
+||
+||                  Each world has a CoreContext of its own, which holds its
+||                  settings (like the Broadphase) and everything Core keeps
+||                  from one step to the next. Worlds don't share anything,
+||                  so several of them can be stepped on different threads
+||                  at once. A PhysicsWorld itself must only be used by one
+||                  thread at a time. A world whose context was given
+||                  threads of its own (see CoreContext.setParallelism())
+||                  should be closed when it is thrown away.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  DEFAULT_TIME_STEP - the length of a step if none is given
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + PhysicsWorld()
+||                  + PhysicsWorld(Vector, double)
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + add(T) : void
+||                  + addAll(List<? extends T>) : void
+||                  + remove(T) : boolean
+||                  + clear() : void
+||                  + getContext() : CoreContext
+||                  + getParts() : List<T>
+||                  + getMovingParts() : List<T>
+||                  + size() : int
+||                  + getGravity() : Vector
+||                  + setGravity(Vector) : void
+||                  + getTimeStep() : double
+||                  + setTimeStep(double) : void
+||                  + getTime() : double
+||                  + getStepCount() : long
+||                  + step() : void
+||                  + step(int) : void
+||                  + close() : void
+||
+++-----------------------------------------------------------------------*/
+public class PhysicsWorld<T extends PhysicsObject> {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * The length of one step (s) if none is given.
+	 */
+	public static final double DEFAULT_TIME_STEP = 0.01;
+
+	/**
+	 * Every part in the world, in the order they were added.
+	 */
+	private List<T> parts;
+	/**
+	 * The Updateable parts, twice: once as parts and once as Updateables,
+	 * since Core wants both.
+	 */
+	private List<T> movingParts;
+	private List<Updateable> partsToUpdate;
+	/**
+	 * The parts that never move.
+	 */
+	private AABBTree staticParts;
+	/**
+	 * Holds the state of every part.
+	 */
+	private BodyStore bodies;
+	/**
+	 * The settings and the state that Core keeps for this world.
+	 */
+	private CoreContext context;
+
+	private Vector gravity;
+	private double timeStep;
+
+	/**
+	 * The number of steps taken since the world was created or cleared, and
+	 * the simulated time they added up to.
+	 */
+	private long stepCount;
+	private double time;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new, empty world with the gravity of the earth and steps of
+	 * DEFAULT_TIME_STEP.
+	 */
+	public PhysicsWorld() {
+		this(new Vector(0.0, -9.80), DEFAULT_TIME_STEP);
+	}
+
+	/**
+	 * Creates a new, empty world.
+	 *
+	 * @param gravity
+	 *            the acceleration due to gravity (m/s^2); copied
+	 * @param timeStep
+	 *            the length of one step (s)
+	 */
+	public PhysicsWorld(Vector gravity, double timeStep) {
+		this.parts = new ArrayList<T>();
+		this.movingParts = new ArrayList<T>();
+		this.partsToUpdate = new ArrayList<Updateable>();
+		this.staticParts = new AABBTree();
+		this.bodies = new BodyStore();
+		this.context = new CoreContext();
+		this.gravity = new Vector();
+		setGravity(gravity);
+		setTimeStep(timeStep);
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Puts a part into the world. The sleeping parts around it are woken
+	 * up, since they might not be resting anymore.
+	 *
+	 * @param part
+	 *            the part to add; it must not be in another world
+	 */
+	public void add(T part) {
+		bodies.add(part);
+		parts.add(part);
+
+		if (part instanceof Updateable) {
+			movingParts.add(part);
+			partsToUpdate.add((Updateable) part);
+		}
+		else {
+			staticParts.insert(part);
+		}
+
+		Core.wakeNear(movingParts, part);
+	}
+
+	/**
+	 * Puts every part in the list into the world.
+	 *
+	 * @param newParts
+	 *            the parts to add
+	 */
+	public void addAll(List<? extends T> newParts) {
+		for (T part : newParts)
+			add(part);
+	}
+
+	/**
+	 * Takes a part out of the world. It gets its own Vectors back, holding
+	 * its last state, and the sleeping parts around it are woken up.
+	 *
+	 * @param part
+	 *            the part to remove
+	 * @return true if the part was in the world
+	 */
+	public boolean remove(T part) {
+		if (!parts.remove(part))
+			return false;
+
+		bodies.remove(part);
+
+		if (part instanceof Updateable) {
+			movingParts.remove(part);
+			partsToUpdate.remove((Updateable) part);
+		}
+		else {
+			staticParts.remove(part);
+		}
+
+		Core.wakeNear(movingParts, part);
+		return true;
+	}
+
+	/**
+	 * Takes every part out of the world and starts the clock over.
+	 */
+	public void clear() {
+		bodies.clear();
+		staticParts.clear();
+		parts.clear();
+		movingParts.clear();
+		partsToUpdate.clear();
+		stepCount = 0;
+		time = 0.0;
+	}
+
+	/**
+	 * Gets the CoreContext the world is stepped with, to change its settings
+	 * or read the numbers it keeps about the last step.
+	 *
+	 * @return the context
+	 */
+	public CoreContext getContext() {
+		return context;
+	}
+
+	/**
+	 * Gets every part in the world, in the order they were added.
+	 *
+	 * @return a read-only view of the parts
+	 */
+	public List<T> getParts() {
+		return Collections.unmodifiableList(parts);
+	}
+
+	/**
+	 * Gets the Updateable parts in the world, in the order they were added.
+	 *
+	 * @return a read-only view of the parts
+	 */
+	public List<T> getMovingParts() {
+		return Collections.unmodifiableList(movingParts);
+	}
+
+	public int size() {
+		return parts.size();
+	}
+
+	/**
+	 * Gets the acceleration due to gravity.
+	 *
+	 * @return a copy of the gravity vector
+	 */
+	public Vector getGravity() {
+		return new Vector(gravity.getX(), gravity.getY());
+	}
+
+	/**
+	 * Sets the acceleration due to gravity, starting with the next step.
+	 *
+	 * @param gravity
+	 *            the gravity (m/s^2); copied
+	 */
+	public void setGravity(Vector gravity) {
+		this.gravity.set(gravity.getX(), gravity.getY());
+	}
+
+	public double getTimeStep() {
+		return timeStep;
+	}
+
+	/**
+	 * Sets the length of a step, starting with the next step.
+	 *
+	 * @param timeStep
+	 *            the length of a step (s), greater than 0
+	 */
+	public void setTimeStep(double timeStep) {
+		if (!(timeStep > 0.0))
+			throw new IllegalArgumentException("The time step must be greater than 0!");
+
+		this.timeStep = timeStep;
+	}
+
+	/**
+	 * Gets how much time has passed in the world since it was created or
+	 * cleared: the length of every step taken, even if the time step was
+	 * changed along the way.
+	 *
+	 * @return the simulated time (s)
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * Moves the world forward by one time step.
+	 */
+	public void step() {
+		Core.updatePhysicsObjects(context, bodies, movingParts, partsToUpdate, staticParts, timeStep, gravity);
+		stepCount++;
+		time += timeStep;
+	}
+
+	/**
+	 * Moves the world forward by a number of time steps, one after the
+	 * other.
+	 *
+	 * @param steps
+	 *            the number of steps to take
+	 */
+	public void step(int steps) {
+		for (int i = 0; i < steps; i++)
+			step();
+	}
+
+	/**
+	 * Stops the threads the world's context started for itself, if any (see
+	 * CoreContext.close()). The parts stay in the world.
+	 */
+	public void close() {
+		context.close();
+	}
+
+}
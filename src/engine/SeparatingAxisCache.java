@@ -0,0 +1,280 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+/*+----------------------------------------------------------------------
+||
+||  Class SeparatingAxisCache
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Remembers, for each pair of objects, the axis that
+||                  Collisions found last step: the one that separated them,
+||                  or the one they overlapped least on if they collided.
+||                  Objects hardly move in one step, so the axis that
+||                  separated a pair last step almost always still does, and
+||                  Collisions tries it first. For a part resting next to a
+||                  wall, that means one axis is tested instead of all of
+||                  them.
+||
+||                  An axis is stored as its index in the list of edge
+||                  normals (those of the first object, then those of the
+||                  second), not as a direction, so it stays right when the
+||                  objects turn.
+||
+||                  Like the ContactCache, the map is an open-addressing
+||                  hash table in plain arrays, keyed by ContactCache.key(),
+||                  and entries that aren't used in a step are dropped at
+||                  the end of it. Entries are only added and dropped on one
+||                  thread; while the pairs are checked in parallel, each
+||                  pair only reads and writes its own slot.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  + NO_AXIS : int
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + SeparatingAxisCache()
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + beginStep() : void
+||                  + endStep() : void
+||                  + ensureCapacity(int) : void
+||                  + slotOf(long) : int
+||                  + size() : int
+||                  + clear() : void
+||                  + getAxis(int) : int
+||                  + setAxis(int, int) : void
+||
+++-----------------------------------------------------------------------*/
+public class SeparatingAxisCache {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * Stands for "no axis known" (a new pair, or one that was never tested
+	 * past its bounding boxes).
+	 */
+	public static final int NO_AXIS = -1;
+
+	/**
+	 * The table is grown when it is more than this full, which keeps the
+	 * probe sequences short.
+	 */
+	private static final double MAX_LOAD = 0.5;
+
+	// the entries. a slot is free when its stamp is 0.
+	private long[] keys;
+	private int[] stamps;
+	private int[] axes;
+	private int size;
+
+	/**
+	 * The number of the current step. Starts at 1, since 0 marks a free
+	 * slot.
+	 */
+	private int stamp;
+
+	// spare arrays that endStep() copies the live entries into
+	private long[] spareKeys;
+	private int[] spareStamps;
+	private int[] spareAxes;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new, empty SeparatingAxisCache.
+	 */
+	public SeparatingAxisCache() {
+		allocate(256);
+		stamp = 1;
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Starts a new step. Every entry that is not looked up with slotOf()
+	 * before endStep() is dropped.
+	 */
+	public void beginStep() {
+		stamp++;
+
+		if (stamp == Integer.MAX_VALUE) {
+			clear();
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * Drops the entries that were not used in this step.
+	 */
+	public void endStep() {
+		if (size == 0)
+			return;
+
+		long[] oldKeys = keys;
+		int[] oldStamps = stamps;
+		int[] oldAxes = axes;
+
+		keys = spareKeys;
+		stamps = spareStamps;
+		axes = spareAxes;
+		size = 0;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldStamps[i] == stamp)
+				axes[insert(oldKeys[i])] = oldAxes[i];
+
+			oldStamps[i] = 0;
+		}
+
+		spareKeys = oldKeys;
+		spareStamps = oldStamps;
+		spareAxes = oldAxes;
+	}
+
+	/**
+	 * Makes sure the given number of entries can be added without the table
+	 * growing. Growing moves every entry, so this has to be called before
+	 * slots are handed out for a step.
+	 *
+	 * @param entries
+	 *            the number of entries that might be added
+	 */
+	public void ensureCapacity(int entries) {
+		while (size + entries > keys.length * MAX_LOAD)
+			grow();
+	}
+
+	/**
+	 * Finds the slot of a pair, adding it (with NO_AXIS) if it isn't there
+	 * yet. The entry is kept for this step.
+	 *
+	 * @param key
+	 *            the key of the pair, from ContactCache.key()
+	 * @return the slot; only valid until the next endStep(), or until the
+	 *         table grows (see ensureCapacity())
+	 */
+	public int slotOf(long key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; stamps[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				stamps[i] = stamp;
+				return i;
+			}
+		}
+
+		if (size + 1 > keys.length * MAX_LOAD)
+			grow();
+
+		int slot = insert(key);
+		axes[slot] = NO_AXIS;
+		return slot;
+	}
+
+	/**
+	 * Gets the number of pairs in the cache.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Forgets every pair.
+	 */
+	public void clear() {
+		for (int i = 0; i < stamps.length; i++)
+			stamps[i] = 0;
+
+		size = 0;
+	}
+
+	public int getAxis(int slot) {
+		return axes[slot];
+	}
+
+	public void setAxis(int slot, int axis) {
+		axes[slot] = axis;
+	}
+
+	/**
+	 * Puts a key into the first free slot of its probe sequence. The key
+	 * must not be in the table yet.
+	 */
+	private int insert(long key) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (stamps[i] != 0)
+			i = (i + 1) & mask;
+
+		keys[i] = key;
+		stamps[i] = stamp;
+		size++;
+		return i;
+	}
+
+	/**
+	 * Doubles the size of the table, keeping every entry.
+	 */
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldStamps = stamps;
+		int[] oldAxes = axes;
+
+		allocate(oldKeys.length * 2);
+		size = 0;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldStamps[i] != 0) {
+				int slot = insert(oldKeys[i]);
+				stamps[slot] = oldStamps[i];
+				axes[slot] = oldAxes[i];
+			}
+		}
+	}
+
+	/**
+	 * Creates (empty) tables of the given size, which must be a power of 2.
+	 */
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		stamps = new int[capacity];
+		axes = new int[capacity];
+
+		spareKeys = new long[capacity];
+		spareStamps = new int[capacity];
+		spareAxes = new int[capacity];
+	}
+
+	/**
+	 * Spreads the bits of a key over an int (see ContactCache).
+	 */
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*+----------------------------------------------------------------------
+||
+||  Class SweepAndPruneBroadphase
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  A Broadphase that keeps the objects sorted by the left
+||                  edge (min x) of their bounding boxes. Walking the sorted
+||                  list, an object only has to be compared with the objects
+||                  that start before it ends, so everything far away on the
+||                  x-axis is skipped. Works best for long, flat worlds.
+||
+||                  Objects barely move from one step to the next, so the
+||                  order from the last step is almost right already. It is
+||                  fixed up with an insertion sort, which is close to O(n)
+||                  on a list that is almost sorted. A full sort is only done
+||                  when parts are added or removed.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  Broadphase
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + SweepAndPruneBroadphase()
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + findPairs(List<? extends PhysicsObject>, PairList) : void
+||
+++-----------------------------------------------------------------------*/
+public class SweepAndPruneBroadphase implements Broadphase {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * The objects seen in the last step, in the order of the parts list. Used
+	 * to notice when parts were added or removed.
+	 */
+	private PhysicsObject[] objects;
+	private int objectCount;
+
+	// the bounding box of each object, indexed the same as the parts list
+	private double[] minX, minY, maxX, maxY;
+
+	/**
+	 * Indices into the parts list, sorted by minX. Kept between steps.
+	 */
+	private int[] order;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new, empty SweepAndPruneBroadphase.
+	 */
+	public SweepAndPruneBroadphase() {
+		objects = new PhysicsObject[0];
+		objectCount = 0;
+		minX = new double[0];
+		minY = new double[0];
+		maxX = new double[0];
+		maxY = new double[0];
+		order = new int[0];
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	@Override
+	public void findPairs(List<? extends PhysicsObject> parts, PairList pairs) {
+		int n = parts.size();
+		boolean changed = ensureCapacity(n) || n != objectCount;
+
+		for (int i = 0; i < n; i++) {
+			PhysicsObject po = parts.get(i);
+			if (objects[i] != po) {
+				objects[i] = po;
+				changed = true;
+			}
+
+			minX[i] = po.getMinX();
+			minY[i] = po.getMinY();
+			maxX[i] = po.getMaxX();
+			maxY[i] = po.getMaxY();
+		}
+
+		// drop references to removed parts
+		for (int i = n; i < objectCount; i++)
+			objects[i] = null;
+		objectCount = n;
+
+		if (changed)
+			fullSort();
+		else
+			insertionSort();
+
+		// sweep along the x-axis
+		for (int k = 0; k < n; k++) {
+			int i = order[k];
+
+			for (int m = k + 1; m < n; m++) {
+				int j = order[m];
+
+				// everything after this starts to the right of i
+				if (minX[j] > maxX[i])
+					break;
+
+				if (minY[i] > maxY[j] || minY[j] > maxY[i])
+					continue;
+
+				if (objects[i] instanceof Updateable)
+					pairs.add(objects[i], objects[j]);
+				else if (objects[j] instanceof Updateable)
+					pairs.add(objects[j], objects[i]);
+			}
+		}
+	}
+
+	/**
+	 * Fixes up the order from the last step. Each object only has to move a
+	 * few places (if any), so this is much faster than sorting from scratch.
+	 */
+	private void insertionSort() {
+		for (int k = 1; k < objectCount; k++) {
+			int i = order[k];
+			double key = minX[i];
+
+			int m = k - 1;
+			while (m >= 0 && minX[order[m]] > key) {
+				order[m + 1] = order[m];
+				m--;
+			}
+
+			order[m + 1] = i;
+		}
+	}
+
+	/**
+	 * Sorts the objects from scratch. Only used when the parts list changed.
+	 */
+	private void fullSort() {
+		Integer[] boxed = new Integer[objectCount];
+		for (int i = 0; i < objectCount; i++)
+			boxed[i] = i;
+
+		Arrays.sort(boxed, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(minX[a], minX[b]);
+			}
+		});
+
+		for (int i = 0; i < objectCount; i++)
+			order[i] = boxed[i];
+	}
+
+	/**
+	 * Makes sure the arrays can hold n objects.
+	 *
+	 * @return true if the arrays had to grow
+	 */
+	private boolean ensureCapacity(int n) {
+		if (objects.length >= n)
+			return false;
+
+		int capacity = Math.max(n, objects.length * 2);
+
+		PhysicsObject[] newObjects = new PhysicsObject[capacity];
+		System.arraycopy(objects, 0, newObjects, 0, objectCount);
+		objects = newObjects;
+
+		minX = new double[capacity];
+		minY = new double[capacity];
+		maxX = new double[capacity];
+		maxY = new double[capacity];
+		order = new int[capacity];
+
+		return true;
+	}
+
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package engine;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*+----------------------------------------------------------------------
+||
+||  Class UniformGridBroadphase
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  A Broadphase that splits the world up into square cells
+||                  of the same size (a spatial hash). Each PhysicsObject is
+||                  put into every cell that its bounding box touches, and an
+||                  Updateable is only paired with the objects that share a
+||                  cell with it.
+||
+||                  The world has no edges, so the cells are not stored in a
+||                  2D array. Instead, the (x, y) cell coordinates are packed
+||                  into a long and hashed into an open-addressing table. The
+||                  table is rebuilt every step, but its arrays are kept so
+||                  that a steady-state step does not allocate anything.
+||
+||                  The cell size should be a bit bigger than the typical
+||                  object. If it is too small, big objects land in lots of
+||                  cells; if it is too big, every cell holds lots of objects.
+||
+||  Inherits From:  None
+||
+||     Interfaces:  Broadphase
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  DEFAULT_CELL_SIZE - the cell size (in meters) used by
+||                                      the no-arg constructor
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + UniformGridBroadphase()
+||                  + UniformGridBroadphase(double)
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + findPairs(List<? extends PhysicsObject>, PairList) : void
+||                  + getCellSize() : double
+||
+++-----------------------------------------------------------------------*/
+public class UniformGridBroadphase implements Broadphase {
+
+	// attributes ///////////////////////////////////////////
+
+	/**
+	 * About twice the size of a basketball.
+	 */
+	public static final double DEFAULT_CELL_SIZE = 0.5;
+
+	/**
+	 * Marks an unused slot in the cell table.
+	 */
+	private static final int EMPTY = -1;
+
+	/**
+	 * The width and height of each cell, in meters.
+	 */
+	private final double cellSize;
+
+	// the bounding box of each object, indexed the same as the parts list
+	private double[] minX, minY, maxX, maxY;
+
+	/**
+	 * The stamp of the last query that looked at each object. Used so that an
+	 * object sharing more than one cell with the query is only paired once.
+	 */
+	private int[] lastQuery;
+	private int queryCount;
+
+	// the hash table of cells. cellHead holds the first entry in the cell
+	// (an index into the entry arrays) or EMPTY if the slot is unused.
+	private long[] cellKeys;
+	private int[] cellHead;
+	private int cellCount;
+
+	// the entries, as singly-linked lists (one per cell)
+	private int[] entryObject;
+	private int[] entryNext;
+	private int entryCount;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new UniformGridBroadphase with the default cell size.
+	 */
+	public UniformGridBroadphase() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * Creates a new UniformGridBroadphase.
+	 *
+	 * @param cellSize
+	 *            the width and height of each cell, in meters
+	 */
+	public UniformGridBroadphase(double cellSize) {
+		if (cellSize <= 0.0)
+			throw new IllegalArgumentException("Cell size must be positive!");
+
+		this.cellSize = cellSize;
+
+		minX = new double[0];
+		minY = new double[0];
+		maxX = new double[0];
+		maxY = new double[0];
+		lastQuery = new int[0];
+		queryCount = 0;
+
+		cellKeys = new long[256];
+		cellHead = new int[256];
+		entryObject = new int[256];
+		entryNext = new int[256];
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	@Override
+	public void findPairs(List<? extends PhysicsObject> parts, PairList pairs) {
+		int n = parts.size();
+
+		ensureObjectCapacity(n);
+		clearCells(n);
+
+		// put every object into the cells it touches
+		for (int i = 0; i < n; i++) {
+			PhysicsObject po = parts.get(i);
+			minX[i] = po.getMinX();
+			minY[i] = po.getMinY();
+			maxX[i] = po.getMaxX();
+			maxY[i] = po.getMaxY();
+
+			int cx0 = toCell(minX[i]), cx1 = toCell(maxX[i]);
+			int cy0 = toCell(minY[i]), cy1 = toCell(maxY[i]);
+
+			for (int cx = cx0; cx <= cx1; cx++)
+				for (int cy = cy0; cy <= cy1; cy++)
+					insert(cx, cy, i);
+		}
+
+		// pair each Updateable with whatever is in its cells
+		for (int i = 0; i < n; i++) {
+			PhysicsObject u = parts.get(i);
+			if (!(u instanceof Updateable))
+				continue;
+
+			int stamp = ++queryCount;
+			lastQuery[i] = stamp; // don't pair it with itself
+
+			int cx0 = toCell(minX[i]), cx1 = toCell(maxX[i]);
+			int cy0 = toCell(minY[i]), cy1 = toCell(maxY[i]);
+
+			for (int cx = cx0; cx <= cx1; cx++) {
+				for (int cy = cy0; cy <= cy1; cy++) {
+					for (int e = cellHead[findSlot(cx, cy)]; e != EMPTY; e = entryNext[e]) {
+						int j = entryObject[e];
+
+						if (lastQuery[j] == stamp)
+							continue;
+						lastQuery[j] = stamp;
+
+						// the pair was already found when j did its query
+						if (j < i && parts.get(j) instanceof Updateable)
+							continue;
+
+						// sharing a cell doesn't mean the boxes overlap
+						if (minX[i] <= maxX[j] && minX[j] <= maxX[i] && minY[i] <= maxY[j] && minY[j] <= maxY[i])
+							pairs.add(u, parts.get(j));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Converts a world coordinate into a cell coordinate.
+	 */
+	private int toCell(double coord) {
+		return (int) Math.floor(coord / cellSize);
+	}
+
+	/**
+	 * Adds an object to the list of a cell, creating the cell if needed.
+	 */
+	private void insert(int cx, int cy, int object) {
+		if (entryCount == entryObject.length) {
+			int[] newObject = new int[entryCount * 2];
+			int[] newNext = new int[entryCount * 2];
+			System.arraycopy(entryObject, 0, newObject, 0, entryCount);
+			System.arraycopy(entryNext, 0, newNext, 0, entryCount);
+			entryObject = newObject;
+			entryNext = newNext;
+		}
+
+		int slot = findSlot(cx, cy);
+		if (cellHead[slot] == EMPTY) {
+			// keep the table at most half full
+			if ((cellCount + 1) * 2 > cellKeys.length) {
+				growCells();
+				slot = findSlot(cx, cy);
+			}
+
+			cellKeys[slot] = toKey(cx, cy);
+			cellCount++;
+		}
+
+		entryObject[entryCount] = object;
+		entryNext[entryCount] = cellHead[slot];
+		cellHead[slot] = entryCount;
+		entryCount++;
+	}
+
+	/**
+	 * Finds the slot that holds the given cell, or the empty slot where it
+	 * would go. Uses linear probing.
+	 */
+	private int findSlot(int cx, int cy) {
+		long key = toKey(cx, cy);
+		int mask = cellKeys.length - 1;
+		int slot = hash(key) & mask;
+
+		while (cellHead[slot] != EMPTY && cellKeys[slot] != key)
+			slot = (slot + 1) & mask;
+
+		return slot;
+	}
+
+	/**
+	 * Doubles the size of the cell table and re-inserts every cell.
+	 */
+	private void growCells() {
+		long[] oldKeys = cellKeys;
+		int[] oldHead = cellHead;
+
+		cellKeys = new long[oldKeys.length * 2];
+		cellHead = new int[oldHead.length * 2];
+		Arrays.fill(cellHead, EMPTY);
+
+		int mask = cellKeys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldHead[i] == EMPTY)
+				continue;
+
+			int slot = hash(oldKeys[i]) & mask;
+			while (cellHead[slot] != EMPTY)
+				slot = (slot + 1) & mask;
+
+			cellKeys[slot] = oldKeys[i];
+			cellHead[slot] = oldHead[i];
+		}
+	}
+
+	/**
+	 * Empties the grid. The cell table is also sized for the number of
+	 * objects that are about to be inserted, so that it rarely has to grow
+	 * in the middle of a step.
+	 */
+	private void clearCells(int n) {
+		int wanted = cellKeys.length;
+		while (wanted < n * 4)
+			wanted *= 2;
+
+		if (wanted != cellKeys.length) {
+			cellKeys = new long[wanted];
+			cellHead = new int[wanted];
+		}
+
+		Arrays.fill(cellHead, EMPTY);
+		cellCount = 0;
+		entryCount = 0;
+	}
+
+	/**
+	 * Makes sure the per-object arrays can hold n objects.
+	 */
+	private void ensureObjectCapacity(int n) {
+		if (minX.length >= n)
+			return;
+
+		int capacity = Math.max(n, minX.length * 2);
+		minX = new double[capacity];
+		minY = new double[capacity];
+		maxX = new double[capacity];
+		maxY = new double[capacity];
+		lastQuery = new int[capacity];
+		queryCount = 0;
+	}
+
+	private static long toKey(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+
+	private static int hash(long key) {
+		// mix the bits so that neighbouring cells don't land in neighbouring slots
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32));
+	}
+
+}
@@ -57,6 +57,11 @@ public class Vector implements Serializable {
 	private double x;
 	private double y;
 	private double magnitude;
+	/**
+	 * Whether <code>magnitude</code> is up to date. The square root is only
+	 * taken when somebody actually asks for the magnitude.
+	 */
+	private transient boolean magnitudeKnown;
 
 	
 	// constructors /////////////////////////////////////////
@@ -77,8 +82,11 @@ public class Vector implements Serializable {
 	 *            the y-component of the new vector
 	 */
 	public Vector(double x, double y) {
-		setX(x);
-		setY(y);
+		// set the fields directly; a subclass may not be ready for setX()
+		// and setY() while it is still being constructed
+		this.x = x;
+		this.y = y;
+		this.magnitudeKnown = false;
 	}
 
 	
@@ -92,15 +100,15 @@ public class Vector implements Serializable {
 	}
 
 	/**
-	 * Sets the x-component of the vector and also adjusts the magnitude
-	 * accordingly.
+	 * Sets the x-component of the vector and marks the magnitude as
+	 * out of date.
 	 * 
 	 * @param x
 	 *            the value of the x-component that is to be set.
 	 */
 	public void setX(double x) {
 		this.x = x;
-		setMagnitude();
+		magnitudeKnown = false;
 	}
 
 	/**
@@ -111,33 +119,43 @@ public class Vector implements Serializable {
 	}
 
 	/**
-	 * Sets the y-component of the vector and also adjusts the magnitude
-	 * accordingly.
+	 * Sets the y-component of the vector and marks the magnitude as
+	 * out of date.
 	 * 
 	 * @param y
 	 *            the value of the y-component that is to be set.
 	 */
 	public void setY(double y) {
 		this.y = y;
-		setMagnitude();
+		magnitudeKnown = false;
 	}
 
 	/**
-	 * Gets the magnitude of the vector
+	 * Gets the magnitude of the vector. It is calculated the first time it is
+	 * asked for after x or y changed.
 	 * 
 	 * @return <code>double</code>
 	 */
 	public double getMagnitude() {
+		if (!magnitudeKnown) {
+			magnitude = Math.sqrt(x * x + y * y);
+			magnitudeKnown = true;
+		}
+
 		return magnitude;
 	}
 
 	/**
-	 * Sets the magnitude of the vector. Notice that this method is private.
-	 * This is because the magnitude depends on the value of the x- and
-	 * y-components and cannot be set arbitrarily.
+	 * Sets both components of the vector.
+	 * 
+	 * @param x
+	 *            the new x-component
+	 * @param y
+	 *            the new y-component
 	 */
-	private void setMagnitude() {
-		magnitude = Math.sqrt(Math.pow(x, 2.0) + Math.pow(y, 2.0));
+	public void set(double x, double y) {
+		setX(x);
+		setY(y);
 	}
 
 	/**
@@ -147,8 +165,8 @@ public class Vector implements Serializable {
 	 *            the other vector that is to be added.
 	 */
 	public void add(Vector other) {
-		this.setX(x + other.x);
-		this.setY(y + other.y);
+		this.setX(getX() + other.getX());
+		this.setY(getY() + other.getY());
 	}
 
 	/**
@@ -159,7 +177,7 @@ public class Vector implements Serializable {
 	 *            vector.
 	 */
 	public void addXComp(double xToAdd) {
-		setX(x + xToAdd);
+		setX(getX() + xToAdd);
 	}
 
 	/**
@@ -170,7 +188,7 @@ public class Vector implements Serializable {
 	 *            vector.
 	 */
 	public void addYComp(double yToAdd) {
-		setY(y + yToAdd);
+		setY(getY() + yToAdd);
 	}
 
 	/**
@@ -181,13 +199,12 @@ public class Vector implements Serializable {
 	 *            take
 	 */
 	public void setVector(Vector v) {
-		x = v.x;
-		y = v.y;
-		magnitude = v.magnitude;
+		setX(v.getX());
+		setY(v.getY());
 	}
 
 	public String toString() {
-		return "x: " + x + " - y: " + y;
+		return "x: " + getX() + " - y: " + getY();
 	}
 
 	public boolean equals(Object other) {
@@ -195,7 +212,7 @@ public class Vector implements Serializable {
 			return false;
 		if (!(other instanceof Vector))
 			return false;
-		return this.x == ((Vector) other).x && this.y == ((Vector) other).y;
+		return this.getX() == ((Vector) other).getX() && this.getY() == ((Vector) other).getY();
 	}
 
 	/**
@@ -208,7 +225,7 @@ public class Vector implements Serializable {
 	 * @return a <code>double</code>
 	 */
 	public static double dotProduct(Vector v1, Vector v2) {
-		return v1.x * v2.x + v1.y * v2.y;
+		return v1.getX() * v2.getX() + v1.getY() * v2.getY();
 	}
 
 	/**
@@ -227,7 +244,9 @@ public class Vector implements Serializable {
 		 * a projected onto b reduces to: proj.x = dpb.x; proj.y = dpb.y;
 		 * Source: http://www.metanetsoftware.com/technique/tutorialA.html
 		 */
-		return new Vector((dotProduct(this, b) / (Math.pow(b.getMagnitude(), 2.0))) * b.x, (dotProduct(this, b) / (Math.pow(b.getMagnitude(), 2.0))) * b.y);
+		Vector result = new Vector();
+		result.setProjection(this, b);
+		return result;
 	}
 
 	/**
@@ -236,7 +255,7 @@ public class Vector implements Serializable {
 	 * @return a Vector
 	 */
 	public Vector getRightHandNormal() {
-		return new Vector(y * -1, x);
+		return new Vector(getY() * -1, getX());
 	}
 
 	/**
@@ -245,7 +264,7 @@ public class Vector implements Serializable {
 	 * @return a Vector
 	 */
 	public Vector getLeftHandNormal() {
-		return new Vector(y, x * -1);
+		return new Vector(getY(), getX() * -1);
 	}
 
 	/**
@@ -253,7 +272,7 @@ public class Vector implements Serializable {
 	 * @return
 	 */
 	public Vector scalarProduct(double s) {
-		return new Vector(x * s, y * s);
+		return new Vector(getX() * s, getY() * s);
 	}
 
 	/**
@@ -266,7 +285,7 @@ public class Vector implements Serializable {
 	 * @return a new Vector
 	 */
 	public static Vector add(Vector v1, Vector v2) {
-		return new Vector(v1.x + v2.x, v1.y + v2.y);
+		return new Vector(v1.getX() + v2.getX(), v1.getY() + v2.getY());
 	}
 
 	/**
@@ -280,7 +299,7 @@ public class Vector implements Serializable {
 	 * @return
 	 */
 	public static Vector subtract(Vector v1, Vector v2) {
-		return new Vector(v1.x - v2.x, v1.y - v2.y);
+		return new Vector(v1.getX() - v2.getX(), v1.getY() - v2.getY());
 	}
 
 	/**
@@ -289,7 +308,73 @@ public class Vector implements Serializable {
 	 * @return a Vector of magnitude 1.0.
 	 */
 	public Vector getNormalized() {
-		return new Vector(x / magnitude, y / magnitude);
+		return new Vector(getX() / getMagnitude(), getY() / getMagnitude());
+	}
+
+	
+	// in-place operations //////////////////////////////////
+	//
+	// These change this Vector instead of returning a new one, so they can be
+	// used in the inner loops of the engine without creating garbage.
+
+	/**
+	 * Multiplies this vector by a scalar.
+	 * 
+	 * @param s
+	 *            the scalar
+	 */
+	public void scale(double s) {
+		set(getX() * s, getY() * s);
+	}
+
+	/**
+	 * Makes this vector a unit vector. A zero vector is left alone.
+	 */
+	public void normalize() {
+		double length = getMagnitude();
+		if (length > 0.0)
+			set(getX() / length, getY() / length);
+	}
+
+	/**
+	 * Sets this vector to v1 + v2.
+	 */
+	public void setSum(Vector v1, Vector v2) {
+		set(v1.getX() + v2.getX(), v1.getY() + v2.getY());
+	}
+
+	/**
+	 * Sets this vector to v1 - v2 (the vector from v2 to v1).
+	 */
+	public void setDifference(Vector v1, Vector v2) {
+		set(v1.getX() - v2.getX(), v1.getY() - v2.getY());
+	}
+
+	/**
+	 * Sets this vector to the right-hand normal of another one.
+	 */
+	public void setRightHandNormal(Vector v) {
+		set(v.getY() * -1, v.getX());
+	}
+
+	/**
+	 * Sets this vector to the projection of <code>a</code> onto
+	 * <code>b</code>. See projectionOnto(Vector).
+	 */
+	public void setProjection(Vector a, Vector b) {
+		double bx = b.getX();
+		double by = b.getY();
+		double scale = dotProduct(a, b) / (bx * bx + by * by);
+		set(scale * bx, scale * by);
+	}
+
+	/**
+	 * Calculates the dot product of this vector and (x, y).
+	 * 
+	 * @return a <code>double</code>
+	 */
+	public double dotProduct(double x, double y) {
+		return getX() * x + getY() * y;
 	}
 
 }
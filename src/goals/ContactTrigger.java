@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package goals;
+
+import parts.Part;
+import parts.PartType;
+
+import engine.PhysicsWorld;
+import engine.Updateable;
+
+/*+----------------------------------------------------------------------
+||
+||  Class ContactTrigger
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Met when a part of one PartType touches a part of
+||                  another (or the same) PartType, like "the BALLOON
+||                  touches a WALLBRICKVERTICAL".
+||
+||                  It doesn't look for contacts itself; it is told about
+||                  the ones each step finds (see Goal), so it costs a
+||                  couple of compares per contact. It can't be met if the
+||                  world lacks either type, or if no part of either type
+||                  moves, since parts that don't move are never checked
+||                  against each other.
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + ContactTrigger(PartType, PartType)
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + getFirstType() : PartType
+||                  + getSecondType() : PartType
+||                  + attach(PhysicsWorld<Part>) : void
+||                  + contact(Part, Part) : void
+||                  + update() : void
+||                  + isMet() : boolean
+||                  + isPossible() : boolean
+||                  + toString() : String
+||
+++-----------------------------------------------------------------------*/
+public class ContactTrigger implements Trigger {
+
+	// attributes ///////////////////////////////////////////
+
+	private PartType firstType, secondType;
+
+	/**
+	 * Whether the attached world has parts that could make the contact.
+	 */
+	private boolean possible;
+	private boolean met;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new ContactTrigger. The order of the types doesn't matter.
+	 *
+	 * @param firstType
+	 *            the kind of one of the parts
+	 * @param secondType
+	 *            the kind of the other part
+	 */
+	public ContactTrigger(PartType firstType, PartType secondType) {
+		if (firstType == null || secondType == null)
+			throw new IllegalArgumentException("The PartTypes cannot be null!");
+
+		this.firstType = firstType;
+		this.secondType = secondType;
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	public PartType getFirstType() {
+		return firstType;
+	}
+
+	public PartType getSecondType() {
+		return secondType;
+	}
+
+	public void attach(PhysicsWorld<Part> world) {
+		int firstCount = 0;
+		int secondCount = 0;
+		boolean moving = false;
+
+		for (Part p : world.getParts()) {
+			if (p.getPartType() == firstType)
+				firstCount++;
+			if (p.getPartType() == secondType)
+				secondCount++;
+			if ((p.getPartType() == firstType || p.getPartType() == secondType) && p instanceof Updateable)
+				moving = true;
+		}
+
+		// two parts are needed when both are of the same type
+		possible = moving && firstCount > 0 && secondCount > 0 && (firstType != secondType || firstCount > 1);
+		met = false;
+	}
+
+	public void contact(Part a, Part b) {
+		if (met)
+			return;
+
+		PartType typeA = a.getPartType();
+		PartType typeB = b.getPartType();
+		if ((typeA == firstType && typeB == secondType) || (typeA == secondType && typeB == firstType))
+			met = true;
+	}
+
+	/**
+	 * Does nothing; the contacts are reported as they are found.
+	 */
+	public void update() {
+	}
+
+	public boolean isMet() {
+		return met;
+	}
+
+	public boolean isPossible() {
+		return met || possible;
+	}
+
+	@Override
+	public String toString() {
+		return "contact " + firstType + " " + secondType;
+	}
+
+}
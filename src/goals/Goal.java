@@ -0,0 +1,220 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package goals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import parts.Part;
+
+import engine.ContactListener;
+import engine.PhysicsObject;
+import engine.PhysicsWorld;
+
+/*+----------------------------------------------------------------------
+||
+||  Class Goal
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  What a level asks for: a set of Triggers that all have
+||                  to be met (each one at some point, not necessarily at
+||                  the same time). A Goal watches one PhysicsWorld, and
+||                  after each step says whether it is met, still pending,
+||                  or impossible, so that a run can stop as soon as the
+||                  answer is known instead of stepping on to the end.
+||
+||                  A goal is impossible when one of its triggers can no
+||                  longer be met, or when every moving part of the world is
+||                  asleep (or there are none): nothing moves again after
+||                  that unless the world is changed, so whatever wasn't met
+||                  won't be.
+||
+||                  While attached, the goal is the ContactListener of the
+||                  world's CoreContext, and passes the contacts of each step
+||                  on to its triggers.
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + Goal()
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + addTrigger(Trigger) : void
+||                  + getTriggers() : List<Trigger>
+||                  + attach(PhysicsWorld<Part>) : void
+||                  + detach() : void
+||                  + update() : void
+||                  + getStatus() : GoalStatus
+||                  + run(int) : GoalStatus
+||                  + contact(PhysicsObject, PhysicsObject) : void
+||
+++-----------------------------------------------------------------------*/
+public class Goal implements ContactListener {
+
+	// attributes ///////////////////////////////////////////
+
+	private List<Trigger> triggers;
+
+	/**
+	 * The world being watched, or <code>null</code>.
+	 */
+	private PhysicsWorld<Part> world;
+	private GoalStatus status;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new Goal without any triggers.
+	 */
+	public Goal() {
+		this.triggers = new ArrayList<Trigger>();
+		this.status = GoalStatus.PENDING;
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Adds a trigger to the goal. Triggers should be added before the goal
+	 * is attached.
+	 *
+	 * @param trigger
+	 *            the trigger
+	 */
+	public void addTrigger(Trigger trigger) {
+		if (trigger == null)
+			throw new IllegalArgumentException("The Trigger cannot be null!");
+
+		triggers.add(trigger);
+	}
+
+	/**
+	 * Gets the triggers of the goal.
+	 *
+	 * @return a read-only view of the triggers
+	 */
+	public List<Trigger> getTriggers() {
+		return Collections.unmodifiableList(triggers);
+	}
+
+	/**
+	 * Starts watching a world, from where it is now. The triggers are
+	 * attached and checked once, so a goal that is met (or impossible) from
+	 * the start says so before the first step.
+	 *
+	 * @param world
+	 *            the world; its ContactListener is replaced
+	 */
+	public void attach(PhysicsWorld<Part> world) {
+		detach();
+
+		this.world = world;
+		for (Trigger trigger : triggers)
+			trigger.attach(world);
+
+		world.getContext().setContactListener(this);
+		status = GoalStatus.PENDING;
+		update();
+	}
+
+	/**
+	 * Stops watching the world, if any. The status is kept.
+	 */
+	public void detach() {
+		if (world == null)
+			return;
+
+		if (world.getContext().getContactListener() == this)
+			world.getContext().setContactListener(null);
+		world = null;
+	}
+
+	/**
+	 * Checks the triggers and works out the status again. Called after each
+	 * step of the world; run() does this itself. Once the goal is met or
+	 * impossible, it stays that way until it is attached again.
+	 */
+	public void update() {
+		if (world == null || status != GoalStatus.PENDING)
+			return;
+
+		boolean allMet = true;
+		boolean possible = true;
+		for (int i = 0; i < triggers.size(); i++) {
+			Trigger trigger = triggers.get(i);
+			trigger.update();
+			allMet &= trigger.isMet();
+			possible &= trigger.isPossible();
+		}
+
+		if (allMet) {
+			status = GoalStatus.MET;
+			return;
+		}
+
+		// the sleeping count is from the last step, so it means nothing
+		// before the first one
+		int moving = world.getMovingParts().size();
+		boolean resting = moving == 0 || (world.getStepCount() > 0 && world.getContext().getLastSleepingCount() == moving);
+
+		if (!possible || resting)
+			status = GoalStatus.IMPOSSIBLE;
+	}
+
+	public GoalStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * Steps the attached world until the goal is met or impossible, or until
+	 * a number of steps have been taken.
+	 *
+	 * @param maxSteps
+	 *            the most steps to take
+	 * @return the status at the end; PENDING if the steps ran out first
+	 */
+	public GoalStatus run(int maxSteps) {
+		if (world == null)
+			throw new IllegalStateException("The Goal is not attached to a world!");
+
+		for (int i = 0; i < maxSteps && status == GoalStatus.PENDING; i++) {
+			world.step();
+			update();
+		}
+
+		return status;
+	}
+
+	/**
+	 * Passes a contact found by the world on to the triggers.
+	 */
+	public void contact(PhysicsObject a, PhysicsObject b) {
+		if (!(a instanceof Part) || !(b instanceof Part))
+			return;
+
+		for (int i = 0; i < triggers.size(); i++)
+			triggers.get(i).contact((Part) a, (Part) b);
+	}
+
+}
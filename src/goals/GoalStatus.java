@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package goals;
+
+/*+----------------------------------------------------------------------
+||
+||  Enum GoalStatus
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Where a Goal stands: still open, reached, or out of
+||                  reach for good.
+||
+++-----------------------------------------------------------------------*/
+public enum GoalStatus {
+
+	/**
+	 * Not met yet, but it still could be.
+	 */
+	PENDING,
+
+	/**
+	 * Met. Stays met, even if the parts move away again.
+	 */
+	MET,
+
+	/**
+	 * Not met, and can't be anymore; for example because every part has
+	 * come to rest.
+	 */
+	IMPOSSIBLE;
+
+	/**
+	 * The name used for the status in the output of the batch programs.
+	 */
+	@Override
+	public String toString() {
+		return name().toLowerCase();
+	}
+
+}
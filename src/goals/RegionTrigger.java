@@ -0,0 +1,180 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package goals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import parts.Part;
+import parts.PartType;
+
+import engine.PhysicsWorld;
+import engine.Updateable;
+import engine.Vector;
+
+/*+----------------------------------------------------------------------
+||
+||  Class RegionTrigger
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  Met when the center of any part of one PartType is
+||                  inside a rectangle of the world, like "any BASKETBALL
+||                  gets into the hoop".
+||
+||                  Only the parts of the right type are looked at, and
+||                  after the first check only those that are awake, since a
+||                  sleeping part hasn't moved. It can't be met anymore if
+||                  the world has no part of the type that moves.
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + RegionTrigger(PartType, double, double, double, double)
+||
+||  Class Methods:  None
+||
+||  Inst. Methods:  + getPartType() : PartType
+||                  + attach(PhysicsWorld<Part>) : void
+||                  + contact(Part, Part) : void
+||                  + update() : void
+||                  + isMet() : boolean
+||                  + isPossible() : boolean
+||                  + toString() : String
+||
+++-----------------------------------------------------------------------*/
+public class RegionTrigger implements Trigger {
+
+	// attributes ///////////////////////////////////////////
+
+	private PartType type;
+	/**
+	 * The rectangle, in m.
+	 */
+	private double minX, minY, maxX, maxY;
+
+	/**
+	 * The parts of the world of the right type; those that don't move are
+	 * only checked once.
+	 */
+	private List<Part> candidates = new ArrayList<Part>();
+	private List<Part> movingCandidates = new ArrayList<Part>();
+	private boolean checkedAll;
+	private boolean met;
+
+	private final Vector center = new Vector();
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new RegionTrigger.
+	 *
+	 * @param type
+	 *            the kind of part to look for
+	 * @param x
+	 *            the left edge of the rectangle (m)
+	 * @param y
+	 *            the bottom edge of the rectangle (m)
+	 * @param width
+	 *            the width of the rectangle (m)
+	 * @param height
+	 *            the height of the rectangle (m)
+	 */
+	public RegionTrigger(PartType type, double x, double y, double width, double height) {
+		if (type == null)
+			throw new IllegalArgumentException("The PartType cannot be null!");
+		if (width < 0.0 || height < 0.0)
+			throw new IllegalArgumentException("The rectangle cannot have a negative size!");
+
+		this.type = type;
+		this.minX = x;
+		this.minY = y;
+		this.maxX = x + width;
+		this.maxY = y + height;
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	public PartType getPartType() {
+		return type;
+	}
+
+	public void attach(PhysicsWorld<Part> world) {
+		candidates.clear();
+		movingCandidates.clear();
+
+		for (Part p : world.getParts()) {
+			if (p.getPartType() != type)
+				continue;
+
+			candidates.add(p);
+			if (p instanceof Updateable)
+				movingCandidates.add(p);
+		}
+
+		checkedAll = false;
+		met = false;
+	}
+
+	/**
+	 * Does nothing; the trigger only cares where parts are.
+	 */
+	public void contact(Part a, Part b) {
+	}
+
+	public void update() {
+		if (met)
+			return;
+
+		// the first check looks at every part, asleep or not, since a part
+		// may have been put to sleep inside the rectangle
+		boolean first = !checkedAll;
+		List<Part> toCheck = first ? candidates : movingCandidates;
+		checkedAll = true;
+
+		for (int i = 0; i < toCheck.size(); i++) {
+			Part p = toCheck.get(i);
+			if (!first && p.isAsleep())
+				continue;
+
+			p.getCenter(center);
+			if (center.getX() >= minX && center.getX() <= maxX && center.getY() >= minY && center.getY() <= maxY) {
+				met = true;
+				return;
+			}
+		}
+	}
+
+	public boolean isMet() {
+		return met;
+	}
+
+	public boolean isPossible() {
+		return met || !movingCandidates.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "region " + type + " " + minX + "," + minY + "," + (maxX - minX) + "," + (maxY - minY);
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package goals;
+
+import parts.Part;
+
+import engine.PhysicsWorld;
+
+/*+----------------------------------------------------------------------
+||
+||  Interface Trigger
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  One condition of a Goal, like "a basketball is in the
+||                  hoop" or "the balloon touches a wall". A trigger is
+||                  checked after every step of the world it is attached to
+||                  and, once met, stays met.
+||
+||                  Triggers are meant to be cheap enough to check every
+||                  step: they look at the few parts they care about, which
+||                  they find once when they are attached, and at the
+||                  contacts the step found anyway (see ContactListener),
+||                  instead of searching the world themselves.
+||
+|+-----------------------------------------------------------------------
+||
+||  Interface Methods:  + attach(PhysicsWorld<Part>) : void
+||                      + contact(Part, Part) : void
+||                      + update() : void
+||                      + isMet() : boolean
+||                      + isPossible() : boolean
+||
+++-----------------------------------------------------------------------*/
+public interface Trigger {
+
+	/**
+	 * Starts watching a world, forgetting anything from before. Only the
+	 * parts that are in the world now are watched.
+	 *
+	 * @param world
+	 *            the world
+	 */
+	public void attach(PhysicsWorld<Part> world);
+
+	/**
+	 * Told about each pair of parts found touching during a step.
+	 *
+	 * @param a
+	 *            the first part; always one that moves
+	 * @param b
+	 *            the second part
+	 */
+	public void contact(Part a, Part b);
+
+	/**
+	 * Checks the trigger after a step (and once right after it is
+	 * attached).
+	 */
+	public void update();
+
+	/**
+	 * Tells whether the trigger has been met since it was attached.
+	 */
+	public boolean isMet();
+
+	/**
+	 * Tells whether the trigger can still be met, going by the parts in the
+	 * world. A trigger that is met is always possible.
+	 */
+	public boolean isPossible();
+
+}
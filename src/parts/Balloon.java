@@ -86,7 +86,7 @@ public class Balloon extends Part implements Updateable {
 		
 		// accel = accel + grav * time
 		// TODO add acceleration due to air resistance (here or before/after velocity calcs??)
-		Vector lift = new Vector(gravity.getX() * -1.3, gravity.getY() * -1.3);
+		Vector lift = new Vector(gravity.getX() * getGravityScale(), gravity.getY() * getGravityScale());
 		acceleration.setX(lift.getX());
 		acceleration.setY(lift.getY());
 				
@@ -100,6 +100,15 @@ public class Balloon extends Part implements Updateable {
 		position.addYComp(velocity.getY() * timeElapsed + 0.5 * acceleration.getY()	* Math.pow(timeElapsed, 2.0));
 	}
 
+	/**
+	 * A balloon is lighter than air, so it is pushed up a bit harder than
+	 * gravity pulls it down.
+	 */
+	@Override
+	public double getGravityScale() {
+		return -1.3;
+	}
+
 	@Override
 	public Shape getShape() {
 		((Ellipse2D.Double) shape).setFrame(getPosition().getX(), getPosition().getY(), getPartType().getWidth(), getPartType().getHeight());
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2011 Mark Ross
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package parts;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+
+import engine.Vector;
+
+/*+----------------------------------------------------------------------
+||
+||  Class ConvexPart
+||
+||         Author:  Mark Ross
+||
+||        Purpose:  A part that doesn't move, shaped like any convex polygon:
+||                  a triangle, or the outline of a custom machine that would
+||                  otherwise have to be built out of many rectangles (and
+||                  give many more pairs to check). The corners are given
+||                  relative to the part's position, in order around the
+||                  polygon (either way round).
+||
+||                  The engine takes the corners straight from
+||                  getLocalVertices(), so the part's edge normals are only
+||                  worked out once.
+||
+||  Inherits From:  Part
+||
+||     Interfaces:  None
+||
+|+-----------------------------------------------------------------------
+||
+||      Constants:  None
+||
+|+-----------------------------------------------------------------------
+||
+||   Constructors:  + ConvexPart(Vector, PartType, double[])
+||
+||  Class Methods:  + triangle(double, double) : double[]
+||
+||  Inst. Methods:  + getShape() : Shape
+||                  + getWidth() : double
+||                  + getHeight() : double
+||                  + getCenter(Vector) : void
+||
+++-----------------------------------------------------------------------*/
+public class ConvexPart extends Part {
+
+	// attributes ///////////////////////////////////////////
+
+	private static final long serialVersionUID = 3902528473311805236L;
+	/**
+	 * The corners relative to the position, as x0, y0, x1, y1, etc.
+	 */
+	private final double[] localVertices;
+	// the size of the box around the corners, and the average of the
+	// corners (which is always inside a convex polygon)
+	private final double width, height;
+	private final double centerX, centerY;
+	// the position the shape was last built at
+	private double shapeX, shapeY;
+
+
+	// constructors /////////////////////////////////////////
+
+	/**
+	 * Creates a new ConvexPart.
+	 * 
+	 * @param pos
+	 *            the position of the part; the corners are relative to it
+	 * @param aType
+	 *            the type of the part, which gives its mass and friction
+	 * @param localVertices
+	 *            the corners, as x0, y0, x1, y1, etc.; at least three, making
+	 *            a convex polygon. The array is copied.
+	 */
+	public ConvexPart(Vector pos, PartType aType, double[] localVertices) {
+		super(pos);
+		this.type = aType;
+
+		if (localVertices.length < 6 || localVertices.length % 2 != 0)
+			throw new IllegalArgumentException("A ConvexPart needs at least three corners!");
+		if (!isConvex(localVertices))
+			throw new IllegalArgumentException("The corners of a ConvexPart must make a convex polygon!");
+
+		this.localVertices = localVertices.clone();
+
+		int n = localVertices.length / 2;
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		double sumX = 0.0, sumY = 0.0;
+		for (int i = 0; i < n; i++) {
+			double x = localVertices[i * 2];
+			double y = localVertices[i * 2 + 1];
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+			sumX += x;
+			sumY += y;
+		}
+
+		this.width = maxX - minX;
+		this.height = maxY - minY;
+		this.centerX = sumX / n;
+		this.centerY = sumY / n;
+
+		buildShape();
+	}
+
+
+	// behaviors ////////////////////////////////////////////
+
+	/**
+	 * Gets the corners of a triangle that fills a box of the given size,
+	 * pointing up: the bottom corners, then the top middle.
+	 * 
+	 * @param width
+	 *            the width of the box
+	 * @param height
+	 *            the height of the box
+	 * @return the corners, to be given to the constructor
+	 */
+	public static double[] triangle(double width, double height) {
+		return new double[] { 0.0, 0.0, width, 0.0, width / 2, height };
+	}
+
+	@Override
+	protected double[] getLocalVertices() {
+		return this.localVertices;
+	}
+
+	@Override
+	public Shape getShape() {
+		if (shapeX != getPosition().getX() || shapeY != getPosition().getY())
+			buildShape();
+		return this.shape;
+	}
+
+	@Override
+	public double getWidth() {
+		return this.width;
+	}
+
+	@Override
+	public double getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Gets the average of the corners, which (unlike the middle of the
+	 * bounding box) is always inside the polygon. Collisions uses it to tell
+	 * which way to push another part out.
+	 */
+	@Override
+	public void getCenter(Vector result) {
+		result.set(getPosition().getX() + centerX, getPosition().getY() + centerY);
+	}
+
+	@Override
+	public Vector getCenter() {
+		return new Vector(getPosition().getX() + centerX, getPosition().getY() + centerY);
+	}
+
+	/**
+	 * Builds the Shape from the corners at the current position.
+	 */
+	private void buildShape() {
+		shapeX = getPosition().getX();
+		shapeY = getPosition().getY();
+
+		Path2D.Double p = new Path2D.Double();
+		p.moveTo(shapeX + localVertices[0], shapeY + localVertices[1]);
+		for (int i = 2; i < localVertices.length; i += 2)
+			p.lineTo(shapeX + localVertices[i], shapeY + localVertices[i + 1]);
+		p.closePath();
+
+		this.shape = p;
+	}
+
+	/**
+	 * Checks that every corner turns the same way, and that the polygon
+	 * isn't flat.
+	 */
+	private static boolean isConvex(double[] vertices) {
+		int n = vertices.length / 2;
+		int sign = 0;
+
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			int k = (i + 2) % n;
+			double cross = (vertices[j * 2] - vertices[i * 2]) * (vertices[k * 2 + 1] - vertices[j * 2 + 1]) - (vertices[j * 2 + 1] - vertices[i * 2 + 1]) * (vertices[k * 2] - vertices[j * 2]);
+
+			if (cross == 0.0)
+				continue;
+			if (sign == 0)
+				sign = cross > 0.0 ? 1 : -1;
+			else if ((cross > 0.0 ? 1 : -1) != sign)
+				return false;
+		}
+
+		return sign != 0;
+	}
+
+}
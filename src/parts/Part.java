@@ -18,6 +18,9 @@
 package parts;
 
 import java.awt.Shape;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import engine.CollisionBoundType;
 import engine.PhysicsObject;
@@ -66,11 +69,13 @@ public abstract class Part extends PhysicsObject {
 	 */
 	protected PartType type;
 	/**
-	 * Used in serialNum generation
+	 * Used in serialNum generation. Atomic, since parts may be created on
+	 * several threads at once (e.g. one world per thread).
 	 */
-	private static int totalParts;
+	private static final AtomicInteger nextSerialNum = new AtomicInteger();
 	/**
-	 * This Part object's serial number
+	 * This Part object's serial number. No two Parts in the program have the
+	 * same one; the engine tells contacts apart by it.
 	 */
 	private int serialNum;
 	
@@ -78,10 +83,19 @@ public abstract class Part extends PhysicsObject {
 	
 	protected Part(Vector pos) {
 		super(pos);
-		this.serialNum = totalParts++;
+		this.serialNum = nextSerialNum.getAndIncrement();
 		this.shape = null;
 	}
 
+	/**
+	 * Reads a saved Part and gives it a new serial number. The saved one was
+	 * handed out by another run of the program and may already be in use.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.serialNum = nextSerialNum.getAndIncrement();
+	}
+
 	/**
 	 * This method 'gets' a <code>PartType</code>, which contains relevant 
 	 * information for this <code>Part</code>.
@@ -146,6 +160,11 @@ public abstract class Part extends PhysicsObject {
 				+ this.getHeight() / 2);
 	}
 	
+	@Override
+	public void getCenter(Vector result) {
+		result.set(this.position.getX() + this.getWidth() / 2, this.position.getY() + this.getHeight() / 2);
+	}
+	
 	public double getWidth() {
 		return this.type.getWidth();
 	}
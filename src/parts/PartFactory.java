@@ -152,6 +152,10 @@ public class PartFactory {
 		 case RAMPRIGHTFACE:
 				toReturn = new Ramp(aPoint, PartType.RAMPRIGHTFACE);
 				break;
+
+		 case TRIANGLE:
+			toReturn = new ConvexPart(aPoint, type, ConvexPart.triangle(type.getWidth(), type.getHeight()));
+			break;
 				
 /*				
 		 case RODENTMOTOROFF:
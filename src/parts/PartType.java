@@ -94,7 +94,10 @@ public enum PartType {
 	// Ramp
 	RAMPLEFTFACE(0.99, 0.98, 0.74, 1.00, 4000, CollisionBoundType.POLYGON, Color.YELLOW),
 
-	RAMPRIGHTFACE(0.99, 0.98, 0.74, 1.00, 4000, CollisionBoundType.POLYGON, Color.YELLOW);
+	RAMPRIGHTFACE(0.99, 0.98, 0.74, 1.00, 4000, CollisionBoundType.POLYGON, Color.YELLOW),
+
+	// Triangle (a ConvexPart)
+	TRIANGLE(0.99, 0.98, 0.50, 0.50, 4000, CollisionBoundType.POLYGON, Color.YELLOW);
 	
 /*
 	// Free Roaming Chicken object
@@ -46,7 +46,7 @@ import parts.PartFactory;
 import parts.PartType;
 
 import engine.Collisions;
-import engine.Core;
+import engine.PhysicsWorld;
 import engine.Updateable;
 import engine.Vector;
 import exceptions.PartCreationException;
@@ -60,10 +60,10 @@ import exceptions.PartCreationException;
 ||                  with each other. The user, after selecting a Part from the
 ||                  PartsPanel, places the Part in the WorldPanel. At any time,
 ||					the user can click the 'Play' button in the ToolbarPanel to
-||					make the WorldPanel run. The run() method is where Parts
-||					are updated, collisions are checked, and physics calculations
-||					are made. After each iteration of the run() method, repaint()
-||					is called in order to update the screen. More methods will be
+||					make the WorldPanel run. The parts live in a PhysicsWorld,
+||					which does the physics; the run() method steps it in time
+||					with the clock and calls repaint() after each frame in
+||					order to update the screen. More methods will be
 ||                  added in the future to give the user more power in manipulating
 ||                  the Parts.
 ||
@@ -100,13 +100,27 @@ public class WorldPanel extends JPanel implements Runnable {
 	 */
 	private static final long serialVersionUID = 2491605962802283992L;
 	/**
-	 * Tells whether or not the update thread is running.
+	 * The most physics steps that are run for one frame. If the computer
+	 * can't keep up with real time, the time it is behind by is dropped, so
+	 * the world slows down instead of spending longer and longer catching
+	 * up.
 	 */
-	private boolean isRunning;
+	private static final int MAX_STEPS_PER_FRAME = 5;
 	/**
-	 * The list of Parts that have been added to the world.
+	 * Tells whether or not the update thread is running. Read by the update
+	 * thread, so it has to be volatile for a pause to be seen.
 	 */
-	private List<Part> parts;
+	private volatile boolean isRunning;
+	/**
+	 * The thread that steps the world, or <code>null</code> when it is
+	 * paused. Only one may step the world at a time, so it is waited for
+	 * before the world is changed or a new one is started.
+	 */
+	private Thread updateThread;
+	/**
+	 * The world the Parts are added to, which runs the physics.
+	 */
+	private PhysicsWorld<Part> world;
 	/**
 	 * A reference to the parts panel so that the currently selected part
 	 * can be retrieved.
@@ -117,6 +131,20 @@ public class WorldPanel extends JPanel implements Runnable {
 	 */
 	private StatusPanel statusPanel;
 	
+	/**
+	 * The Updateable parts while the world is running (<code>null</code>
+	 * when it isn't), and where each of them was before the last step.
+	 */
+	private volatile List<Part> movingParts;
+	private double[] previousX, previousY;
+	/**
+	 * How far the simulated time is past the last step, as a fraction of a
+	 * step. paint() draws the moving parts this far between their previous
+	 * and current positions, so they move smoothly even though the physics
+	 * only runs in whole steps.
+	 */
+	private volatile double interpolationAlpha;
+	
 	private Point2D.Double worldCenter;
 	
 	private double zoomLevel;
@@ -143,7 +171,7 @@ public class WorldPanel extends JPanel implements Runnable {
 		this.partsPanel = partsPnl;
 		this.statusPanel = statusPnl;
 		this.isRunning = false;
-		this.parts = new ArrayList<Part>();
+		this.world = new PhysicsWorld<Part>();
 		MouseListener ml = new MouseEventListener();
 		addMouseListener(ml);
 		addMouseMotionListener((MouseMotionListener) ml);
@@ -195,12 +223,35 @@ public class WorldPanel extends JPanel implements Runnable {
 		//g2.transform(new AffineTransform(10.0, 0.0, 0.0, 10.0, 0.0, 0.0));
 		g2.scale(zoomLevel, zoomLevel);
 
-		// draw all the parts
-		for (Part p : parts) {
+		// draw all the parts. while running, the moving ones are drawn
+		// afterwards.
+		List<Part> moving = movingParts;
+		for (Part p : world.getParts()) {
+			if (moving != null && p instanceof Updateable)
+				continue;
+			
 			g2.setColor(p.getPartType().getColor());
 			g2.fill(p.getShape());
 		}
 		
+		// draw the moving parts between their previous and current positions
+		if (moving != null) {
+			double alpha = interpolationAlpha;
+			AffineTransform saved = g2.getTransform();
+			
+			for (int i = 0; i < moving.size(); i++) {
+				Part p = moving.get(i);
+				Vector position = p.getPosition();
+				
+				// the Shape is at the current position, so move it back
+				// towards the previous one
+				g2.translate((previousX[i] - position.getX()) * (1.0 - alpha), (previousY[i] - position.getY()) * (1.0 - alpha));
+				g2.setColor(p.getPartType().getColor());
+				g2.fill(p.getShape());
+				g2.setTransform(saved);
+			}
+		}
+		
 		// draw debug lines
 		//g2.drawLine(-1000, 0, 1000, 0);
 		//g2.drawLine(0, -1000, 0, 1000);
@@ -227,49 +278,85 @@ public class WorldPanel extends JPanel implements Runnable {
     |  Returns:  None
     *-------------------------------------------------------------------*/
 	public void run() {
-		// save the parts list (so it can be reset) and make a list of only the Updateable parts
-		List<Part> savedPartsList = new ArrayList<Part>();
-		List<Updateable> partsToUpdate = new ArrayList<Updateable>();
-		for (Part p : parts) {
-			savedPartsList.add(p);
-			
-			if (p instanceof Updateable) 
-				partsToUpdate.add((Updateable) p);
-		}
-	
-		Vector gravity = new Vector(0.0, -9.80);
+		double timeStep = world.getTimeStep();
+		List<Part> moving = world.getMovingParts();
+		
+		previousX = new double[moving.size()];
+		previousY = new double[moving.size()];
+		savePositions(moving);
+		interpolationAlpha = 1.0;
+		movingParts = moving;
 		
-		long currTime = System.nanoTime();
-		long prevTime = currTime;
+		// the time that has passed in the real world but not yet in the
+		// simulation, in seconds
+		double accumulator = 0.0;
+		long prevTime = System.nanoTime();
 
 		// start update loop
 		while (isRunning) {
-			// update position of movable objects
-			//currTime = System.nanoTime();
-			//Core.updatePhysicsObjects(parts, partsToUpdate, 100.0, gravity);
-			Core.updatePhysicsObjects(parts, partsToUpdate, 0.01, gravity);
- 			
-			//System.out.println((currTime - prevTime) / 1000000000.0);
-		
-			repaint();
+			long currTime = System.nanoTime();
+			accumulator += (currTime - prevTime) / 1000000000.0;
 			prevTime = currTime;
-			try{   
-				Thread.sleep(10);//sleep for 1 ms    
+			
+			// run as many whole steps as fit into the time that has passed
+			int steps = 0;
+			while (accumulator >= timeStep && steps < MAX_STEPS_PER_FRAME) {
+				savePositions(moving);
+				world.step();
+				accumulator -= timeStep;
+				steps++;
+			}
+			
+			// too far behind to catch up, so give up on the whole steps
+			if (accumulator >= timeStep)
+				accumulator %= timeStep;
+			
+			interpolationAlpha = accumulator / timeStep;
+			repaint();
+			
+			// wait until the next step is due
+			long sleepTime = (long) ((timeStep - accumulator) * 1000.0);
+			try {
+				Thread.sleep(Math.max(1, sleepTime));
 			} 
-				catch(InterruptedException ie){ 
+			catch (InterruptedException ie) { 
 			}
 		}
 
-		// restore the saved parts list
-		parts = savedPartsList;
+		movingParts = null;
 		repaint(); 
 	}
 
+    /*---------------------------------------------------------------------
+    |  Method savePositions
+    |
+    |  Purpose:  Remembers where each moving part is, so that paint() can draw
+    |            it between this position and the one after the next step.
+    |
+    |  Pre-condition:  previousX and previousY are as long as the list.
+    |
+    |  Post-condition: 
+    |
+    |  Parameters:
+    |      moving -- the Updateable parts
+    |
+    |  Returns:  None
+    *-------------------------------------------------------------------*/
+	private void savePositions(List<Part> moving) {
+		for (int i = 0; i < moving.size(); i++) {
+			Vector position = moving.get(i).getPosition();
+			previousX[i] = position.getX();
+			previousY[i] = position.getY();
+		}
+	}
+
     /*---------------------------------------------------------------------
     |  Method activateWorld
     |
     |  Purpose:  Sets this WorldPanel in motion by creating a new thread,
-    |            which then calls run().
+    |            which then calls run(). An update thread that is still
+    |            running is stopped first, so that two of them never step
+    |            the world at once.
     |
     |  Pre-condition:  
     |
@@ -281,19 +368,23 @@ public class WorldPanel extends JPanel implements Runnable {
     |  Returns:  None
     *-------------------------------------------------------------------*/
 	public void activateWorld() {
+		deactivateWorld();
+
 		this.isRunning = true;
-		Thread updateThread = new Thread(this);
+		updateThread = new Thread(this);
 		updateThread.start();
 	}
 
     /*---------------------------------------------------------------------
-    |  Method [Method Name]
+    |  Method deactivateWorld
     |
-    |  Purpose:  Stops the update loop, pausing the world.
+    |  Purpose:  Stops the update loop, pausing the world, and waits for the
+    |            update thread to finish its step.
     |
     |  Pre-condition:  
     |
-    |  Post-condition: 
+    |  Post-condition: No thread is stepping the world, so it can be
+    |            changed (cleared, loaded) safely.
     |
     |  Parameters:
     |      None
@@ -302,6 +393,26 @@ public class WorldPanel extends JPanel implements Runnable {
     *-------------------------------------------------------------------*/
 	public void deactivateWorld() {
 		this.isRunning = false;
+
+		Thread oldThread = updateThread;
+		updateThread = null;
+		if (oldThread == null || oldThread == Thread.currentThread())
+			return;
+
+		// wake it from its sleep, then wait for it to leave run()
+		oldThread.interrupt();
+		boolean interrupted = false;
+		while (oldThread.isAlive()) {
+			try {
+				oldThread.join();
+			}
+			catch (InterruptedException ie) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
 	}
 
 	/*---------------------------------------------------------------------
@@ -338,7 +449,7 @@ public class WorldPanel extends JPanel implements Runnable {
     |  Returns:  None
     *-------------------------------------------------------------------*/
 	public void clearParts() {
-		parts.clear();
+		world.clear();
 
 		repaint();
 	}
@@ -361,7 +472,7 @@ public class WorldPanel extends JPanel implements Runnable {
 		Serializable object;
 		ObjectOutputStream objstream = new ObjectOutputStream(new FileOutputStream(filename));
 		
-		object = (Serializable) parts;
+		object = new ArrayList<Part>(world.getParts());
 		objstream.writeObject(object);
 		
 		objstream.close();
@@ -387,7 +498,9 @@ public class WorldPanel extends JPanel implements Runnable {
 
 		Object object = objstream.readObject();
 		try {
-			parts = (List<Part>) object;
+			List<Part> parts = (List<Part>) object;
+			world.clear();
+			world.addAll(parts);
 		} catch (ClassCastException e) {
 			// TODO is this the right exception class??
 			System.err.println("CLASS CAST EXCEPTION\n");
@@ -565,39 +678,38 @@ public class WorldPanel extends JPanel implements Runnable {
 					toCreate = PartFactory.getPart(partTypeSelected, mouseLocation);
 					
 					if (!collisionOnPlace(toCreate)) {
-						if (parts.add(toCreate)) { // TODO check for NullPointerException? 
-							repaint();
-							statusPanel.setStatus("New " + toCreate.getPartType().toString() + " added!");
+						world.add(toCreate);
+						repaint();
+						statusPanel.setStatus("New " + toCreate.getPartType().toString() + " added!");
+						
+						// TODO remove this
+						if (toCreate.getPartType() == PartType.RAMPLEFTFACE || toCreate.getPartType() == PartType.RAMPRIGHTFACE) {
+							PathIterator pi = toCreate.getShape().getPathIterator(null);
+							
+							System.out.println("PRINTING RAMP PATH SEGMENTS");
+							double[] points = new double[6];
 							
-							// TODO remove this
-							if (toCreate.getPartType() == PartType.RAMPLEFTFACE || toCreate.getPartType() == PartType.RAMPRIGHTFACE) {
-								PathIterator pi = toCreate.getShape().getPathIterator(null);
+							while (!pi.isDone()) {
 								
-								System.out.println("PRINTING RAMP PATH SEGMENTS");
-								double[] points = new double[6];
+								switch (pi.currentSegment(points)) {
+									case PathIterator.SEG_MOVETO:
+										System.out.print("Move to: ");
+										break;
+									case PathIterator.SEG_LINETO:
+										System.out.print("Line to: ");
+										break;
+									case PathIterator.SEG_CLOSE:
+										System.out.print("Close: ");
+										break;
+								}
 								
-								while (!pi.isDone()) {
-									
-									switch (pi.currentSegment(points)) {
-										case PathIterator.SEG_MOVETO:
-											System.out.print("Move to: ");
-											break;
-										case PathIterator.SEG_LINETO:
-											System.out.print("Line to: ");
-											break;
-										case PathIterator.SEG_CLOSE:
-											System.out.print("Close: ");
-											break;
-									}
-									
-									for (double d : points) {
-										System.out.print(d + ", ");
-									}
-									
-									System.out.println();
-									
-									pi.next();
+								for (double d : points) {
+									System.out.print(d + ", ");
 								}
+								
+								System.out.println();
+								
+								pi.next();
 							}
 						}
 					}
@@ -646,7 +758,7 @@ public class WorldPanel extends JPanel implements Runnable {
 	    |  Returns:  true if there was a collision with another part; false otherwise.
 	    *-------------------------------------------------------------------*/
 		private boolean collisionOnPlace(Part toCreate) {
-			for (Part p : parts) {
+			for (Part p : world.getParts()) {
 				if (Collisions.checkForCollision(toCreate, p).getCollisionOccurred())
 					return true;
 			}